@@ -0,0 +1,18 @@
+package evaluacion.jmh;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Recorre los profesores en orden, uno por invocación, para no medir siempre los mismos datos
+ * en la caché del procesador
+ */
+@State(Scope.Thread)
+public class Cursor {
+    private int actual;
+
+    int siguiente(int profesores) {
+        actual = actual % profesores + 1;
+        return actual;
+    }
+}
@@ -0,0 +1,31 @@
+package evaluacion.jmh;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Servidor preparado (ver Servidor.preparar) con la cantidad de profesores del catálogo y de
+ * evaluaciones ya recibidas de cada corrida
+ */
+@State(Scope.Benchmark)
+public class Datos {
+    @Param({"10", "500", "5000"})
+    public int profesores;
+
+    @Param({"1000", "100000"})
+    public int evaluaciones;
+
+    Object almacen;
+    Object rutas;
+    Object cuestionario;
+
+    @Setup(Level.Trial)
+    public void preparar() throws Throwable {
+        almacen = Servidor.preparar(profesores, evaluaciones);
+        rutas = Servidor.rutas();
+        cuestionario = Servidor.cuestionario();
+    }
+}
@@ -0,0 +1,69 @@
+package evaluacion.jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Suma de evaluaciones nuevas al almacén (lo que hace el escritor del registro por cada una),
+ * desde un hilo y desde varios a la vez. Cada iteración empieza con un almacén nuevo con las
+ * evaluaciones del parámetro, así las iteraciones no miden un almacén cada vez más grande.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IngestaBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Almacen {
+        Object almacen;
+
+        @Setup(Level.Iteration)
+        public void preparar(Datos datos) throws Throwable {
+            almacen = Servidor.almacen(datos.cuestionario, datos.profesores, datos.evaluaciones);
+        }
+    }
+
+    /**
+     * Evaluaciones ya armadas, para medir solo el registro
+     */
+    @State(Scope.Thread)
+    public static class Evaluaciones {
+        byte[][] puntuaciones = new byte[64][];
+        int actual;
+
+        @Setup(Level.Trial)
+        public void preparar(Datos datos) throws Throwable {
+            int preguntas = Servidor.preguntas(datos.cuestionario);
+            int escala = Servidor.escala(datos.cuestionario);
+            Random azar = new Random();
+            for (int i = 0; i < puntuaciones.length; i++) {
+                puntuaciones[i] = new byte[preguntas];
+                for (int p = 0; p < preguntas; p++) puntuaciones[i][p] = (byte) (1 + azar.nextInt(escala));
+            }
+        }
+
+        byte[] siguiente() {
+            actual = (actual + 1) % puntuaciones.length;
+            return puntuaciones[actual];
+        }
+    }
+
+    @Benchmark
+    public void registrar(Datos datos, Almacen almacen, Cursor cursor, Evaluaciones evaluaciones)
+            throws Throwable {
+        Servidor.REGISTRAR.invokeExact(almacen.almacen, cursor.siguiente(datos.profesores), System.currentTimeMillis(),
+                evaluaciones.siguiente());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void registrarConcurrente(Datos datos, Almacen almacen, Cursor cursor, Evaluaciones evaluaciones)
+            throws Throwable {
+        Servidor.REGISTRAR.invokeExact(almacen.almacen, cursor.siguiente(datos.profesores), System.currentTimeMillis(),
+                evaluaciones.siguiente());
+    }
+}
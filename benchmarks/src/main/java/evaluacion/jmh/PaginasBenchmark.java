@@ -0,0 +1,50 @@
+package evaluacion.jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Armado del HTML de las páginas: resultados de un profesor (todo su historial o los últimos
+ * 30 días, que suma sus días), una tarjeta de categoría y la página principal con búsqueda
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaginasBenchmark {
+
+    @State(Scope.Thread)
+    public static class Tarjeta {
+        Object resumen;
+
+        @Setup(Level.Trial)
+        public void preparar(Datos datos) throws Throwable {
+            resumen = (Object) Servidor.RESUMEN_DE.invokeExact(datos.almacen, 1);
+        }
+    }
+
+    @Benchmark
+    public String generarHtmlResultados(Datos datos, Cursor cursor) throws Throwable {
+        return (String) Servidor.GENERAR_HTML_RESULTADOS.invokeExact(cursor.siguiente(datos.profesores));
+    }
+
+    @Benchmark
+    public String generarHtmlResultadosUltimos30Dias(Datos datos, Cursor cursor) throws Throwable {
+        int hoy = (int) Math.floorDiv(System.currentTimeMillis(), 86_400_000L);
+        return (String) Servidor.GENERAR_HTML_PERIODO.invokeExact(cursor.siguiente(datos.profesores),
+                new int[]{hoy - 29, hoy});
+    }
+
+    @Benchmark
+    public String crearTarjetaResultados(Tarjeta tarjeta) throws Throwable {
+        return (String) Servidor.CREAR_TARJETA.invokeExact("Metodología y Estrategias de Enseñanza", "Jaime Zapata",
+                "Metodologías Ágiles", "/img/profesor.jpg", tarjeta.resumen, 0);
+    }
+
+    @Benchmark
+    public String paginaPrincipalConBusqueda(Datos datos) throws Throwable {
+        return (String) Servidor.GENERAR_HTML_INICIO.invokeExact("an", 2);
+    }
+}
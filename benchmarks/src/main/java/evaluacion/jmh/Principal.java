@@ -0,0 +1,22 @@
+package evaluacion.jmh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entrada del jar de benchmarks: la misma de JMH, pero con el perfilador de memoria (-prof gc)
+ * activo salvo que se pida otro perfilador, porque la asignación por operación es parte de lo
+ * que se mide
+ */
+public class Principal {
+
+    public static void main(String[] args) throws Exception {
+        List<String> opciones = new ArrayList<>(Arrays.asList(args));
+        if (!opciones.contains("-prof")) {
+            opciones.add(0, "-prof");
+            opciones.add(1, "gc");
+        }
+        org.openjdk.jmh.Main.main(opciones.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,48 @@
+package evaluacion.jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Respuesta completa de /evaluar escrita en un flujo que descarta los bytes: la versión
+ * guardada (el caso habitual), la generada en el momento y la comprimida en el momento
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RespuestasBenchmark {
+    private static final OutputStream DESCARTE = OutputStream.nullOutputStream();
+
+    @Benchmark
+    public Object resultadosGuardados(Datos datos, Cursor cursor) throws Throwable {
+        Object respuesta = (Object) Servidor.RESPUESTA_RESULTADOS.invokeExact(cursor.siguiente(datos.profesores),
+                Servidor.IDENTIDAD, true);
+        Servidor.ESCRIBIR.invokeExact(respuesta, DESCARTE);
+        return respuesta;
+    }
+
+    @Benchmark
+    public Object resultadosGenerados(Datos datos, Cursor cursor) throws Throwable {
+        return escribir(cursor.siguiente(datos.profesores), Servidor.IDENTIDAD);
+    }
+
+    @Benchmark
+    public Object resultadosGzip(Datos datos, Cursor cursor) throws Throwable {
+        return escribir(cursor.siguiente(datos.profesores), Servidor.GZIP);
+    }
+
+    /** Lo mismo que hace el servidor para un período: HTML, EscritorRespuesta y escritura */
+    private static Object escribir(int profesorId, int codificacion) throws Throwable {
+        String html = (String) Servidor.GENERAR_HTML_RESULTADOS.invokeExact(profesorId);
+        Object escritor = (Object) Servidor.ESCRITOR_DEL_HILO.invokeExact();
+        escritor = (Object) Servidor.ESCRITOR_TEXTO.invokeExact(escritor, (CharSequence) html);
+        Object respuesta = (Object) Servidor.ESCRITOR_RESPUESTA.invokeExact(escritor, "200 OK", "text/html",
+                codificacion, true);
+        Servidor.ESCRIBIR.invokeExact(respuesta, DESCARTE);
+        return respuesta;
+    }
+}
@@ -0,0 +1,207 @@
+package evaluacion.jmh;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Acceso a las clases del servidor desde los benchmarks.
+ *
+ * Las clases del servidor están en el paquete por omisión, que no se puede importar desde un
+ * paquete con nombre, y JMH no acepta benchmarks en el paquete por omisión. Por eso se llega a
+ * ellas por reflexión una sola vez, y se invocan con MethodHandle guardados en campos static
+ * final: el JIT los trata como constantes y la llamada queda como una invocación directa.
+ * Los tipos del servidor aparecen como Object en las firmas.
+ */
+final class Servidor {
+    static final Class<?> SERVIDOR = clase("EvaluacionServidor");
+    static final Class<?> CUESTIONARIO = clase("Cuestionario");
+    static final Class<?> CATALOGO = clase("CatalogoProfesores");
+    static final Class<?> ALMACEN = clase("AlmacenEvaluaciones");
+    static final Class<?> RESUMEN = clase("AlmacenEvaluaciones$Resumen");
+    static final Class<?> SOLICITUD = clase("SolicitudHttp");
+    static final Class<?> RESPUESTA = clase("RespuestaHttp");
+    static final Class<?> RUTAS = clase("RegistroRutas");
+    static final Class<?> DESTINO = clase("RegistroRutas$Destino");
+    static final Class<?> ESCRITOR = clase("EscritorRespuesta");
+
+    // Páginas (EvaluacionServidor)
+    static final MethodHandle GENERAR_HTML_RESULTADOS = metodo(SERVIDOR, "generarHtmlResultados", int.class);
+    static final MethodHandle GENERAR_HTML_PERIODO = metodo(SERVIDOR, "generarHtmlResultados", int.class, int[].class);
+    static final MethodHandle CREAR_TARJETA = metodo(SERVIDOR, "crearTarjetaResultados",
+            String.class, String.class, String.class, String.class, RESUMEN, int.class);
+    static final MethodHandle GENERAR_HTML_INICIO = metodo(SERVIDOR, "generarHtmlInicio", String.class, int.class);
+
+    // Respuestas
+    static final MethodHandle RESPUESTA_RESULTADOS = metodo(SERVIDOR, "respuestaResultados",
+            int.class, int.class, boolean.class);
+    static final MethodHandle ESCRITOR_DEL_HILO = metodo(ESCRITOR, "delHilo");
+    static final MethodHandle ESCRITOR_TEXTO = metodo(ESCRITOR, "texto", CharSequence.class);
+    static final MethodHandle ESCRITOR_RESPUESTA = metodo(ESCRITOR, "respuesta",
+            String.class, String.class, int.class, boolean.class);
+    static final MethodHandle ESCRIBIR = metodo(RESPUESTA, "escribir", java.io.OutputStream.class);
+
+    // Solicitudes
+    static final MethodHandle ANALIZAR = metodo(SOLICITUD, "analizar", ByteBuffer.class);
+    static final MethodHandle BUSCAR_RUTA = metodo(RUTAS, "buscar", SOLICITUD);
+    static final MethodHandle PARAMETRO_ENTERO = metodo(SOLICITUD, "parametroEntero", String.class, int.class);
+    static final MethodHandle PROCESAR = metodo(SERVIDOR, "procesarSolicitud", SOLICITUD, boolean.class);
+
+    // Almacén
+    static final MethodHandle REGISTRAR = metodo(ALMACEN, "registrar", int.class, long.class, byte[].class);
+    static final MethodHandle RESUMEN_DE = metodo(ALMACEN, "resumen", int.class);
+
+    static final int IDENTIDAD = 0; // Compresion.IDENTIDAD
+    static final int GZIP = 1;      // Compresion.GZIP
+
+    private Servidor() {}
+
+    /**
+     * Método para dejar el servidor listo para atender sin abrir sockets: cuestionario, catálogo
+     * con esa cantidad de profesores, almacén con esa cantidad de evaluaciones repartidas en el
+     * último año, y las respuestas y rutas web. Devuelve el almacén.
+     */
+    static Object preparar(int profesores, int evaluaciones) throws Throwable {
+        Object cuestionario = invocar(CUESTIONARIO, "cargar", new Class<?>[]{Path.class}, null,
+                Paths.get(System.getProperty("cuestionario", "cuestionario.txt")));
+        Object catalogo = invocar(CATALOGO, "cargar", new Class<?>[]{Path.class}, null, catalogo(profesores));
+        Object almacen = almacen(cuestionario, profesores, evaluaciones);
+
+        fijar("cuestionario", cuestionario);
+        fijar("catalogo", catalogo);
+        fijar("evaluaciones", almacen);
+        fijar("htmlInicio", GENERAR_HTML_INICIO.invoke("", 1));
+        invocar(SERVIDOR, "cargarRespuestasWeb", new Class<?>[]{Path.class}, null,
+                Paths.get(System.getProperty("web", "web")));
+        return almacen;
+    }
+
+    /**
+     * Método para crear un almacén nuevo con esa cantidad de evaluaciones (siempre las mismas)
+     * repartidas entre los profesores en el último año
+     */
+    static Object almacen(Object cuestionario, int profesores, int evaluaciones) throws Throwable {
+        Constructor<?> crear = ALMACEN.getDeclaredConstructor(CUESTIONARIO);
+        crear.setAccessible(true);
+        Object almacen = crear.newInstance(cuestionario);
+        llenar(almacen, preguntas(cuestionario), escala(cuestionario), profesores, evaluaciones);
+        return almacen;
+    }
+
+    static Object rutas() throws ReflectiveOperationException {
+        Field campo = SERVIDOR.getDeclaredField("rutas");
+        campo.setAccessible(true);
+        return campo.get(null);
+    }
+
+    static int preguntas(Object cuestionario) throws ReflectiveOperationException {
+        return (int) invocar(CUESTIONARIO, "preguntas", new Class<?>[0], cuestionario);
+    }
+
+    static int escala(Object cuestionario) throws ReflectiveOperationException {
+        return (int) invocar(CUESTIONARIO, "escala", new Class<?>[0], cuestionario);
+    }
+
+    static Object cuestionario() throws ReflectiveOperationException {
+        Field campo = SERVIDOR.getDeclaredField("cuestionario");
+        campo.setAccessible(true);
+        return campo.get(null);
+    }
+
+    /**
+     * Solicitud GET tal como la envía un navegador, con keep-alive y Accept-Encoding
+     */
+    static ByteBuffer solicitud(String destino) {
+        return ByteBuffer.wrap(("GET " + destino + " HTTP/1.1\r\n"
+                + "Host: localhost:8080\r\n"
+                + "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:128.0) Gecko/20100101 Firefox/128.0\r\n"
+                + "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n"
+                + "Accept-Language: es-CL,es;q=0.8,en;q=0.5\r\n"
+                + "Accept-Encoding: gzip, deflate\r\n"
+                + "Connection: keep-alive\r\n"
+                + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static Path catalogo(int profesores) throws IOException {
+        String[] nombres = {"Ana", "Luis", "Jaime", "María", "José", "Camila", "Pedro", "Valentina"};
+        String[] apellidos = {"Zapata", "Muñoz", "Rojas", "Díaz", "Soto", "Contreras", "Silva", "Martínez"};
+        String[] cursos = {"Lógica de Programación", "Metodologías Ágiles", "Bases de Datos", "Redes",
+                "Introducción a la programación", "Estructuras de Datos", "Cálculo", "Física"};
+        StringBuilder texto = new StringBuilder();
+        for (int id = 1; id <= profesores; id++) {
+            texto.append(id).append(" | ").append(nombres[id % nombres.length]).append(' ')
+                    .append(apellidos[(id / nombres.length) % apellidos.length]).append(" | ")
+                    .append(cursos[(id * 7) % cursos.length]).append(" | /img/profesor.jpg\n");
+        }
+        Path archivo = Files.createTempFile("profesores", ".txt");
+        archivo.toFile().deleteOnExit();
+        Files.writeString(archivo, texto, StandardCharsets.UTF_8);
+        return archivo;
+    }
+
+    private static void llenar(Object almacen, int preguntas, int escala, int profesores, int evaluaciones)
+            throws Throwable {
+        Random azar = new Random(42);
+        long ahora = System.currentTimeMillis();
+        for (int i = 0; i < evaluaciones; i++) {
+            byte[] puntuaciones = new byte[preguntas];
+            for (int p = 0; p < preguntas; p++) puntuaciones[p] = (byte) (1 + azar.nextInt(escala));
+            long fecha = ahora - (long) azar.nextInt(365) * 86_400_000L;
+            REGISTRAR.invoke(almacen, 1 + i % profesores, fecha, puntuaciones);
+        }
+    }
+
+    private static void fijar(String nombre, Object valor) throws ReflectiveOperationException {
+        Field campo = SERVIDOR.getDeclaredField(nombre);
+        campo.setAccessible(true);
+        campo.set(null, valor);
+    }
+
+    private static Object invocar(Class<?> clase, String nombre, Class<?>[] tipos, Object objeto, Object... args)
+            throws ReflectiveOperationException {
+        Method m = clase.getDeclaredMethod(nombre, tipos);
+        m.setAccessible(true);
+        return m.invoke(objeto, args);
+    }
+
+    private static Class<?> clase(String nombre) {
+        try {
+            return Class.forName(nombre);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("No se encuentra " + nombre + " (¿se compiló ../src?)", e);
+        }
+    }
+
+    /**
+     * MethodHandle de un método (privado o no) con los tipos del servidor cambiados a Object
+     */
+    private static MethodHandle metodo(Class<?> clase, String nombre, Class<?>... tipos) {
+        try {
+            Method m = clase.getDeclaredMethod(nombre, tipos);
+            m.setAccessible(true);
+            MethodHandle h = MethodHandles.lookup().unreflect(m);
+            MethodType tipo = h.type();
+            for (int i = 0; i < tipo.parameterCount(); i++) {
+                if (!publico(tipo.parameterType(i))) tipo = tipo.changeParameterType(i, Object.class);
+            }
+            if (!publico(tipo.returnType())) tipo = tipo.changeReturnType(Object.class);
+            return h.asType(tipo);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No se encuentra " + clase.getName() + "." + nombre, e);
+        }
+    }
+
+    private static boolean publico(Class<?> tipo) {
+        return tipo.isPrimitive() || tipo.isArray() || tipo.getPackageName().startsWith("java.");
+    }
+}
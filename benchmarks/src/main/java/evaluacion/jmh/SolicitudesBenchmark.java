@@ -0,0 +1,59 @@
+package evaluacion.jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lectura de una solicitud GET de navegador, búsqueda de su ruta y respuesta completa (sin socket)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolicitudesBenchmark {
+
+    /**
+     * Solicitudes ya codificadas, una por profesor (hasta 256)
+     */
+    @State(Scope.Thread)
+    public static class Solicitudes {
+        ByteBuffer[] buffers;
+        int actual;
+
+        @Setup(Level.Trial)
+        public void preparar(Datos datos) {
+            buffers = new ByteBuffer[Math.min(datos.profesores, 256)];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = Servidor.solicitud("/evaluar?profesor=" + (i + 1) + "&vista=completa");
+            }
+        }
+
+        ByteBuffer siguiente() {
+            ByteBuffer buf = buffers[actual];
+            actual = (actual + 1) % buffers.length;
+            buf.position(0);
+            return buf;
+        }
+    }
+
+    @Benchmark
+    public Object analizar(Solicitudes solicitudes) throws Throwable {
+        return (Object) Servidor.ANALIZAR.invokeExact(solicitudes.siguiente());
+    }
+
+    @Benchmark
+    public int analizarYBuscarRuta(Datos datos, Solicitudes solicitudes) throws Throwable {
+        Object solicitud = (Object) Servidor.ANALIZAR.invokeExact(solicitudes.siguiente());
+        Object destino = (Object) Servidor.BUSCAR_RUTA.invokeExact(datos.rutas, solicitud);
+        return (int) Servidor.PARAMETRO_ENTERO.invokeExact(solicitud, "profesor", 1) + (destino == null ? 0 : 1);
+    }
+
+    @Benchmark
+    public Object procesarSolicitud(Solicitudes solicitudes) throws Throwable {
+        Object solicitud = (Object) Servidor.ANALIZAR.invokeExact(solicitudes.siguiente());
+        return (Object) Servidor.PROCESAR.invokeExact(solicitud, true);
+    }
+}
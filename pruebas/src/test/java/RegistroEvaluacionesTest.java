@@ -0,0 +1,338 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Recuperación del registro en disco: reproducción de los segmentos, registro incompleto o con
+ * CRC incorrecto al final, registro dañado en un segmento intermedio, paso de un segmento al
+ * siguiente, segmentos de otro cuestionario, lotes que fallan al escribirse e instantánea vacía.
+ *
+ * Una caída se simula copiando los archivos del registro mientras sigue abierto (todo lo que
+ * agregar confirmó ya está en disco) y abriendo la copia con un almacén vacío.
+ */
+class RegistroEvaluacionesTest {
+    @TempDir
+    Path temporal;
+
+    private Cuestionario cuestionario;
+    private Path datos;
+    private final List<RegistroEvaluaciones> abiertos = new ArrayList<>();
+
+    @BeforeEach
+    void preparar() throws IOException {
+        Path archivo = temporal.resolve("cuestionario.txt");
+        Files.writeString(archivo, "escala: 5\n"
+                + "categoria: Clases\n"
+                + "pregunta: Claridad | Explica con claridad.\n"
+                + "pregunta: Puntualidad | Llega a la hora.\n"
+                + "pregunta: Material | Entrega el material.\n", StandardCharsets.UTF_8);
+        cuestionario = Cuestionario.cargar(archivo);
+        datos = temporal.resolve("datos");
+    }
+
+    @AfterEach
+    void cerrar() throws IOException {
+        for (RegistroEvaluaciones registro : abiertos) registro.close();
+    }
+
+    @Test
+    void reproduceLoEscritoDespuesDeUnaCaida() throws Exception {
+        RegistroEvaluaciones registro = abrir(datos, new AlmacenEvaluaciones(cuestionario), 1 << 20);
+        agregar(registro, 1, 10);
+        agregar(registro, 2, 3);
+
+        AlmacenEvaluaciones recuperado = new AlmacenEvaluaciones(cuestionario);
+        abrir(copiaTrasCaida(), recuperado, 1 << 20);
+
+        assertEquals(10, recuperado.resumen(1).evaluaciones);
+        assertEquals(3, recuperado.resumen(2).evaluaciones);
+        // Puntuaciones de agregar: pregunta p del i-ésimo envío vale 1 + (i + p) % 5
+        assertEquals(2, recuperado.resumen(1).conteo(0, 1));
+        assertEquals(2, recuperado.resumen(1).conteo(1, 5));
+    }
+
+    @Test
+    void descartaUnRegistroIncompletoAlFinal() throws Exception {
+        RegistroEvaluaciones registro = abrir(datos, new AlmacenEvaluaciones(cuestionario), 1 << 20);
+        agregar(registro, 1, 5);
+        Path copia = copiaTrasCaida();
+        Path segmento = unicoSegmento(copia);
+        long completo = Files.size(segmento);
+        // La escritura de un registro quedó a medias
+        Files.write(segmento, new byte[registro.tamanoRegistro / 2], StandardOpenOption.APPEND);
+
+        AlmacenEvaluaciones recuperado = new AlmacenEvaluaciones(cuestionario);
+        RegistroEvaluaciones reabierto = abrir(copia, recuperado, 1 << 20);
+
+        assertEquals(5, recuperado.resumen(1).evaluaciones);
+        assertEquals(completo, Files.size(segmento));
+        // Lo que se agrega después queda a continuación del último registro válido
+        agregar(reabierto, 1, 1);
+        AlmacenEvaluaciones otraVez = new AlmacenEvaluaciones(cuestionario);
+        abrir(copiaTrasCaida(copia), otraVez, 1 << 20);
+        assertEquals(6, otraVez.resumen(1).evaluaciones);
+    }
+
+    @Test
+    void descartaElUltimoRegistroSiSuCrcNoCoincide() throws Exception {
+        RegistroEvaluaciones registro = abrir(datos, new AlmacenEvaluaciones(cuestionario), 1 << 20);
+        agregar(registro, 1, 4);
+        agregar(registro, 2, 1);
+        Path copia = copiaTrasCaida();
+        Path segmento = unicoSegmento(copia);
+        long tamano = Files.size(segmento);
+        // Se cambia la puntuación del último registro sin actualizar su CRC
+        try (FileChannel canal = FileChannel.open(segmento, StandardOpenOption.WRITE)) {
+            canal.write(ByteBuffer.wrap(new byte[]{4}), tamano - registro.tamanoRegistro + 12);
+        }
+
+        AlmacenEvaluaciones recuperado = new AlmacenEvaluaciones(cuestionario);
+        abrir(copia, recuperado, 1 << 20);
+
+        assertEquals(4, recuperado.resumen(1).evaluaciones);
+        assertNull(recuperado.resumen(2));
+        assertEquals(tamano - registro.tamanoRegistro, Files.size(segmento));
+    }
+
+    @Test
+    void cargaUnaInstantaneaSinProfesores() throws Exception {
+        Files.createDirectories(datos);
+        InstantaneaAlmacen.escribir(datos, 3, cuestionario, new TreeMap<>(), new HashMap<>());
+
+        AlmacenEvaluaciones recuperado = new AlmacenEvaluaciones(cuestionario);
+        assertEquals(3, InstantaneaAlmacen.cargarUltima(datos, recuperado));
+        assertTrue(recuperado.resumenes().isEmpty());
+    }
+
+    @Test
+    void saltaUnRegistroDanadoEnUnSegmentoIntermedioSinTruncarlo() throws Exception {
+        RegistroEvaluaciones registro = abrir(datos, new AlmacenEvaluaciones(cuestionario), 4);
+        agregar(registro, 1, 10);
+        Path copia = copiaTrasCaida();
+        List<Path> segmentos = segmentos(copia);
+        assertEquals(3, segmentos.size()); // 4 + 4 + 2
+        Path intermedio = segmentos.get(1);
+        long tamano = Files.size(intermedio);
+        // Se cambia la puntuación del segundo registro sin actualizar su CRC
+        try (FileChannel canal = FileChannel.open(intermedio, StandardOpenOption.WRITE)) {
+            long segundo = RegistroEvaluaciones.TAMANO_CABECERA + registro.tamanoRegistro;
+            canal.write(ByteBuffer.wrap(new byte[]{4}), segundo + 12);
+        }
+
+        AlmacenEvaluaciones recuperado = new AlmacenEvaluaciones(cuestionario);
+        abrir(copia, recuperado, 4);
+
+        // Solo se pierde el registro dañado: los siguientes del segmento y los del último se reproducen
+        assertEquals(9, recuperado.resumen(1).evaluaciones);
+        assertEquals(tamano, Files.size(intermedio));
+        assertEquals(3, segmentos(copia).size());
+    }
+
+    @Test
+    void pasaAlSiguienteSegmentoAlLlenarseYLosReproduceTodos() throws Exception {
+        RegistroEvaluaciones registro = abrir(datos, new AlmacenEvaluaciones(cuestionario), 4);
+        agregar(registro, 1, 10);
+        Path copia = copiaTrasCaida();
+        assertEquals(3, segmentos(copia).size()); // 4 + 4 + 2
+
+        AlmacenEvaluaciones recuperado = new AlmacenEvaluaciones(cuestionario);
+        RegistroEvaluaciones reabierto = abrir(copia, recuperado, 4);
+        assertEquals(10, recuperado.resumen(1).evaluaciones);
+
+        // Sigue en el último segmento (2 de 4) y después crea otro
+        agregar(reabierto, 1, 3);
+        assertEquals(4, segmentos(copia).size());
+        AlmacenEvaluaciones otraVez = new AlmacenEvaluaciones(cuestionario);
+        abrir(copiaTrasCaida(copia), otraVez, 4);
+        assertEquals(13, otraVez.resumen(1).evaluaciones);
+    }
+
+    @Test
+    void alCerrarTomaUnaInstantaneaYRetiraLosSegmentosCubiertos() throws Exception {
+        RegistroEvaluaciones registro = RegistroEvaluaciones.abrir(datos, new AlmacenEvaluaciones(cuestionario),
+                1000, 60, false, 4);
+        agregar(registro, 1, 10);
+        registro.close();
+
+        assertEquals(1, segmentos(datos).size()); // Solo el segmento nuevo, vacío
+        AlmacenEvaluaciones recuperado = new AlmacenEvaluaciones(cuestionario);
+        abrir(datos, recuperado, 4);
+        assertEquals(10, recuperado.resumen(1).evaluaciones);
+        assertEquals(2, recuperado.resumen(1).conteo(2, 3));
+    }
+
+    @Test
+    void rechazaSegmentosDeUnCuestionarioConOtraEscala() throws Exception {
+        RegistroEvaluaciones registro = abrir(datos, new AlmacenEvaluaciones(cuestionario), 1 << 20);
+        agregar(registro, 1, 2);
+        Path copia = copiaTrasCaida();
+
+        Path archivo = temporal.resolve("cuestionario-escala-4.txt");
+        Files.writeString(archivo, "escala: 4\n"
+                + "categoria: Clases\n"
+                + "pregunta: Claridad | Explica con claridad.\n"
+                + "pregunta: Puntualidad | Llega a la hora.\n"
+                + "pregunta: Material | Entrega el material.\n", StandardCharsets.UTF_8);
+        AlmacenEvaluaciones otraEscala = new AlmacenEvaluaciones(Cuestionario.cargar(archivo));
+
+        IOException error = assertThrows(IOException.class, () -> abrir(copia, otraEscala, 1 << 20));
+        assertTrue(error.getMessage().contains("escala 4"));
+        assertNull(otraEscala.resumen(1));
+    }
+
+    @Test
+    void unLoteQueFallaNoQuedaEnElDiscoNiEnElAlmacen() throws Exception {
+        AtomicBoolean falla = new AtomicBoolean();
+        AlmacenEvaluaciones almacen = new AlmacenEvaluaciones(cuestionario);
+        RegistroEvaluaciones registro = RegistroEvaluaciones.abrir(datos, almacen, 1000, 60, false, 4,
+                (ruta, opciones) -> new CanalQueFalla(FileChannel.open(ruta, opciones), falla));
+        abiertos.add(registro);
+        agregar(registro, 1, 3);
+        long tamano = Files.size(unicoSegmento(datos));
+
+        // El force de los datos falla: el lote (que además puede llenar el segmento y crear otro) se descarta
+        falla.set(true);
+        List<CompletableFuture<Void>> futuros = new ArrayList<>();
+        for (int i = 0; i < 3; i++) futuros.add(registro.agregar(2, new byte[]{1, 2, 3}));
+        for (CompletableFuture<Void> futuro : futuros) assertThrows(ExecutionException.class, futuro::get);
+        assertNull(almacen.resumen(2));
+        assertEquals(tamano, Files.size(unicoSegmento(datos)));
+
+        // El registro sigue escribiendo a continuación y al arrancar solo se reproduce lo confirmado
+        falla.set(false);
+        agregar(registro, 3, 2);
+        AlmacenEvaluaciones recuperado = new AlmacenEvaluaciones(cuestionario);
+        abrir(copiaTrasCaida(), recuperado, 4);
+        assertEquals(3, recuperado.resumen(1).evaluaciones);
+        assertNull(recuperado.resumen(2));
+        assertEquals(2, recuperado.resumen(3).evaluaciones);
+    }
+
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Canal que delega en uno real y, mientras falla está activo, no puede forzar los datos al
+     * disco (force(false), el del lote). force(true), el de la cabecera y el corte, sigue andando.
+     */
+    private static final class CanalQueFalla extends FileChannel {
+        private final FileChannel canal;
+        private final AtomicBoolean falla;
+
+        CanalQueFalla(FileChannel canal, AtomicBoolean falla) {
+            this.canal = canal;
+            this.falla = falla;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            if (!metaData && falla.get()) throw new IOException("Falla simulada del disco");
+            canal.force(metaData);
+        }
+
+        @Override public int read(ByteBuffer dst) throws IOException { return canal.read(dst); }
+        @Override public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return canal.read(dsts, offset, length);
+        }
+        @Override public int write(ByteBuffer src) throws IOException { return canal.write(src); }
+        @Override public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return canal.write(srcs, offset, length);
+        }
+        @Override public long position() throws IOException { return canal.position(); }
+        @Override public FileChannel position(long newPosition) throws IOException {
+            canal.position(newPosition);
+            return this;
+        }
+        @Override public long size() throws IOException { return canal.size(); }
+        @Override public FileChannel truncate(long size) throws IOException {
+            canal.truncate(size);
+            return this;
+        }
+        @Override public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return canal.transferTo(position, count, target);
+        }
+        @Override public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return canal.transferFrom(src, position, count);
+        }
+        @Override public int read(ByteBuffer dst, long position) throws IOException { return canal.read(dst, position); }
+        @Override public int write(ByteBuffer src, long position) throws IOException { return canal.write(src, position); }
+        @Override public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return canal.map(mode, position, size);
+        }
+        @Override public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return canal.lock(position, size, shared);
+        }
+        @Override public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return canal.tryLock(position, size, shared);
+        }
+        @Override protected void implCloseChannel() throws IOException { canal.close(); }
+    }
+
+    /** Registro sin instantáneas periódicas durante la prueba; se cierra al terminar */
+    private RegistroEvaluaciones abrir(Path carpeta, AlmacenEvaluaciones almacen, int registrosPorSegmento)
+            throws IOException {
+        RegistroEvaluaciones registro = RegistroEvaluaciones.abrir(carpeta, almacen, 1000, 60, false,
+                registrosPorSegmento);
+        abiertos.add(registro);
+        return registro;
+    }
+
+    /** Agrega cantidad evaluaciones del profesor y espera a que estén en disco */
+    private void agregar(RegistroEvaluaciones registro, int profesorId, int cantidad) throws Exception {
+        List<CompletableFuture<Void>> futuros = new ArrayList<>();
+        for (int i = 0; i < cantidad; i++) {
+            byte[] puntuaciones = new byte[cuestionario.preguntas()];
+            for (int p = 0; p < puntuaciones.length; p++) puntuaciones[p] = (byte) (1 + (i + p) % 5);
+            futuros.add(registro.agregar(profesorId, puntuaciones));
+        }
+        for (CompletableFuture<Void> futuro : futuros) futuro.get();
+    }
+
+    private Path copiaTrasCaida() throws IOException {
+        return copiaTrasCaida(datos);
+    }
+
+    private Path copiaTrasCaida(Path carpeta) throws IOException {
+        Path copia = Files.createTempDirectory(temporal, "caida");
+        try (Stream<Path> archivos = Files.list(carpeta)) {
+            for (Path archivo : (Iterable<Path>) archivos::iterator) {
+                if (Files.isRegularFile(archivo)) Files.copy(archivo, copia.resolve(archivo.getFileName()));
+            }
+        }
+        return copia;
+    }
+
+    private static List<Path> segmentos(Path carpeta) throws IOException {
+        try (Stream<Path> archivos = Files.list(carpeta)) {
+            return archivos.filter(p -> p.getFileName().toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    private static Path unicoSegmento(Path carpeta) throws IOException {
+        List<Path> segmentos = segmentos(carpeta);
+        assertEquals(1, segmentos.size());
+        return segmentos.get(0);
+    }
+}
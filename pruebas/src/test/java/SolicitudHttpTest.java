@@ -0,0 +1,179 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Análisis de solicitudes sobre bytes: solicitudes encadenadas, datos incompletos, límites y
+ * la línea de solicitud con su camino y consulta
+ */
+class SolicitudHttpTest {
+
+    @Test
+    void analizaLaLineaDeSolicitudYLasCabeceras() throws IOException {
+        SolicitudHttp s = SolicitudHttp.analizar(buffer(
+                "GET /evaluar?profesor=12&q=Mar%C3%ADa+Jos%C3%A9 HTTP/1.1\r\nHost: x\r\nAccept-Encoding: gzip\r\n\r\n"));
+
+        assertEquals("GET", s.metodo);
+        assertEquals("HTTP/1.1", s.version);
+        assertEquals("/evaluar", s.camino());
+        assertTrue(s.tieneConsulta());
+        assertEquals(12, s.parametroEntero("profesor", -1));
+        assertEquals("María José", s.parametro("q"));
+        assertNull(s.parametro("pagina"));
+        assertEquals("gzip", s.cabecera("accept-encoding"));
+        assertTrue(s.mantenerConexion());
+    }
+
+    @Test
+    void decodificaElCaminoSoloSiTraePorciento() throws IOException {
+        SolicitudHttp s = SolicitudHttp.analizar(buffer("GET /img/logo%20grande.png HTTP/1.0\r\n\r\n"));
+        assertEquals("/img/logo grande.png", s.camino());
+        assertFalse(s.tieneConsulta());
+        assertFalse(s.mantenerConexion()); // HTTP/1.0 sin keep-alive
+
+        // Una secuencia % no válida deja el camino tal como llegó
+        assertEquals("/a%zz", SolicitudHttp.analizar(buffer("GET /a%zz HTTP/1.1\r\n\r\n")).camino());
+    }
+
+    @Test
+    void parametroEnteroNoValidoDevuelveElValorPorOmision() throws IOException {
+        SolicitudHttp s = SolicitudHttp.analizar(buffer(
+                "GET /?page=abc&n=99999999999&vacio=&neg=-3&esp=+7+ HTTP/1.1\r\n\r\n"));
+        assertEquals(1, s.parametroEntero("page", 1));
+        assertEquals(1, s.parametroEntero("n", 1));
+        assertEquals(1, s.parametroEntero("vacio", 1));
+        assertEquals(-3, s.parametroEntero("neg", 1));
+        assertEquals(7, s.parametroEntero("esp", 1));
+    }
+
+    @Test
+    void solicitudesEncadenadasSeAnalizanUnaTrasOtra() throws IOException {
+        ByteBuffer buf = buffer("GET /uno HTTP/1.1\r\n\r\n"
+                + "POST /evaluar HTTP/1.1\r\nContent-Length: 5\r\n\r\nhola!"
+                + "\r\nGET /tres HTTP/1.1\r\nConnection: close\r\n\r\n"
+                + "GET /cua");
+
+        assertEquals("/uno", SolicitudHttp.analizar(buf).camino());
+        SolicitudHttp post = SolicitudHttp.analizar(buf);
+        assertEquals("POST", post.metodo);
+        assertEquals("hola!", new String(post.cuerpo, StandardCharsets.US_ASCII));
+        SolicitudHttp tercera = SolicitudHttp.analizar(buf); // La línea vacía antes de ella se tolera
+        assertEquals("/tres", tercera.camino());
+        assertFalse(tercera.mantenerConexion());
+
+        // La cuarta está incompleta: null y position al comienzo de ella
+        int antes = buf.position();
+        assertNull(SolicitudHttp.analizar(buf));
+        assertEquals(antes, buf.position());
+    }
+
+    @Test
+    void datosIncompletosNoConsumenLaSolicitud() throws IOException {
+        String completa = "POST /evaluar HTTP/1.1\r\nContent-Length: 10\r\n\r\n0123456789";
+        for (int corte = 0; corte < completa.length(); corte++) {
+            ByteBuffer buf = buffer(completa.substring(0, corte));
+            assertNull(SolicitudHttp.analizar(buf), "cortada en " + corte);
+            assertEquals(0, buf.position(), "cortada en " + corte);
+        }
+        ByteBuffer buf = buffer(completa);
+        assertEquals("0123456789", new String(SolicitudHttp.analizar(buf).cuerpo, StandardCharsets.US_ASCII));
+        assertFalse(buf.hasRemaining());
+    }
+
+    @Test
+    void cabecerasDemasiadoGrandes() {
+        String enorme = "GET / HTTP/1.1\r\nX-Relleno: " + "a".repeat(SolicitudHttp.MAX_CABECERAS) + "\r\n";
+        // Aunque todavía no terminan, ya se sabe que no caben
+        assertEstado("431 Request Header Fields Too Large", enorme);
+        assertEstado("431 Request Header Fields Too Large", enorme + "\r\n");
+    }
+
+    @Test
+    void cuerpoDemasiadoGrandeOContentLengthNoValido() {
+        assertEstado("413 Payload Too Large",
+                "POST / HTTP/1.1\r\nContent-Length: " + (SolicitudHttp.MAX_CUERPO + 1) + "\r\n\r\n");
+        assertEstado("413 Payload Too Large", "POST / HTTP/1.1\r\nContent-Length: 99999999999999999999\r\n\r\n");
+        assertEstado("400 Bad Request", "POST / HTTP/1.1\r\nContent-Length: -1\r\n\r\n");
+        assertEstado("400 Bad Request", "POST / HTTP/1.1\r\nContent-Length: +5\r\n\r\nhola!");
+        assertEstado("400 Bad Request", "POST / HTTP/1.1\r\nContent-Length: 5, 5\r\n\r\nhola!");
+        assertEstado("501 Not Implemented", "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n");
+    }
+
+    @Test
+    void contentLengthRepetidoSeRechaza() {
+        assertEstado("400 Bad Request", "POST / HTTP/1.1\r\nContent-Length: 5\r\nContent-Length: 0\r\n\r\nhola!");
+        assertEstado("400 Bad Request", "POST / HTTP/1.1\r\nContent-Length: 5\r\ncontent-length: 5\r\n\r\nhola!");
+    }
+
+    @Test
+    void lineaDeSolicitudMalFormada() {
+        assertEstado("400 Bad Request", "GET\r\n\r\n");
+        assertEstado("400 Bad Request", "GET /a b HTTP/1.1\r\n\r\n");
+        assertEstado("400 Bad Request", "GET / SPDY/3\r\n\r\n");
+        assertEstado("400 Bad Request", "GET / HTTP/1.1\r\nSin dos puntos\r\n\r\n");
+    }
+
+    @Test
+    void lectorAtiendeSolicitudesEncadenadasLeidasDeAPedazos() throws IOException {
+        byte[] datos = ("GET /uno HTTP/1.1\r\n\r\nGET /dos HTTP/1.1\r\n\r\n"
+                + "POST /tres HTTP/1.1\r\nContent-Length: 3\r\n\r\nabc").getBytes(StandardCharsets.US_ASCII);
+        LectorHttp lector = new LectorHttp(new DePocoEnPoco(datos, 3));
+
+        assertEquals("/uno", lector.leer().camino());
+        assertEquals("/dos", lector.leer().camino());
+        assertEquals("abc", new String(lector.leer().cuerpo, StandardCharsets.US_ASCII));
+        assertNull(lector.leer()); // El cliente cerró
+    }
+
+    @Test
+    void lectorRechazaUnaSolicitudCortadaAlCerrar() {
+        LectorHttp lector = new LectorHttp(new ByteArrayInputStream(
+                "GET /uno HTTP/1.1\r\nHost".getBytes(StandardCharsets.US_ASCII)));
+        SolicitudHttp.Invalida e = assertThrows(SolicitudHttp.Invalida.class, lector::leer);
+        assertEquals("400 Bad Request", e.estado);
+    }
+
+    // ---------------------------------------------------------------------------------
+
+    private static ByteBuffer buffer(String texto) {
+        return ByteBuffer.wrap(texto.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static void assertEstado(String estado, String solicitud) {
+        SolicitudHttp.Invalida e = assertThrows(SolicitudHttp.Invalida.class,
+                () -> SolicitudHttp.analizar(buffer(solicitud)));
+        assertEquals(estado, e.estado);
+    }
+
+    /** Entrega los datos de a pocos bytes por lectura, como un socket lento */
+    private static final class DePocoEnPoco extends InputStream {
+        private final byte[] datos;
+        private final int porLectura;
+        private int pos;
+
+        DePocoEnPoco(byte[] datos, int porLectura) {
+            this.datos = datos;
+            this.porLectura = porLectura;
+        }
+
+        @Override
+        public int read() {
+            return pos < datos.length ? datos[pos++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int desde, int largo) {
+            if (pos >= datos.length) return -1;
+            int n = Math.min(Math.min(largo, porLectura), datos.length - pos);
+            System.arraycopy(datos, pos, b, desde, n);
+            pos += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tabla de rutas: caminos exactos, prefijos, segmentos {n} y su prioridad, y el registro de
+ * manejadores por método
+ */
+class TablaRutasTest {
+
+    @Test
+    void caminoExactoGanaAlPrefijoYElPrefijoMasLargoAlMasCorto() throws IOException {
+        TablaRutas<String> tabla = new TablaRutas<>();
+        tabla.agregar("/", "inicio");
+        tabla.agregar("/*", "archivos");
+        tabla.agregar("/img/*", "imagenes");
+        tabla.agregar("/img/logo.png", "logo");
+
+        assertEquals("inicio", buscar(tabla, "/"));
+        assertEquals("logo", buscar(tabla, "/img/logo.png"));
+        assertEquals("imagenes", buscar(tabla, "/img/otra.png"));
+        assertEquals("imagenes", buscar(tabla, "/img/"));
+        assertEquals("archivos", buscar(tabla, "/img")); // "/img/*" pide la barra
+        assertEquals("archivos", buscar(tabla, "/style.css"));
+    }
+
+    @Test
+    void sinCoincidenciaDevuelveNull() throws IOException {
+        TablaRutas<String> tabla = new TablaRutas<>();
+        tabla.agregar("/evaluar", "evaluar");
+        assertNull(buscar(tabla, "/evaluarX"));
+        assertNull(buscar(tabla, "/evalua"));
+        assertNull(buscar(tabla, "/otra"));
+    }
+
+    @Test
+    void segmentoNumericoDejaSuValorEnLaSolicitud() throws IOException {
+        TablaRutas<String> tabla = new TablaRutas<>();
+        tabla.agregar("/api/profesores/{n}/resultados", "resultados");
+        tabla.agregar("/api/profesores/{n}/eventos", "eventos");
+
+        SolicitudHttp s = solicitud("/api/profesores/42/resultados");
+        assertEquals("resultados", tabla.buscar(s));
+        assertEquals(42, s.numeroRuta);
+
+        s = solicitud("/api/profesores/7/eventos");
+        assertEquals("eventos", tabla.buscar(s));
+        assertEquals(7, s.numeroRuta);
+
+        assertNull(buscar(tabla, "/api/profesores/7"));
+        assertNull(buscar(tabla, "/api/profesores/7/otra"));
+    }
+
+    @Test
+    void segmentoQueNoEsNumeroOSeDesbordaQuedaComoNoNumero() throws IOException {
+        TablaRutas<String> tabla = new TablaRutas<>();
+        tabla.agregar("/api/profesores/{n}/resultados", "resultados");
+
+        for (String segmento : new String[]{"abc", "12x", "-3", "2147483648", "99999999999999999999"}) {
+            SolicitudHttp s = solicitud("/api/profesores/" + segmento + "/resultados");
+            assertEquals("resultados", tabla.buscar(s), segmento);
+            assertEquals(SolicitudHttp.NO_NUMERO, s.numeroRuta, segmento);
+        }
+        SolicitudHttp s = solicitud("/api/profesores/2147483647/resultados");
+        tabla.buscar(s);
+        assertEquals(Integer.MAX_VALUE, s.numeroRuta);
+        // Segmento vacío
+        s = solicitud("/api/profesores//resultados");
+        assertEquals("resultados", tabla.buscar(s));
+        assertEquals(SolicitudHttp.NO_NUMERO, s.numeroRuta);
+    }
+
+    @Test
+    void literalTienePrioridadSobreNumeroSinVolverAtras() throws IOException {
+        TablaRutas<String> tabla = new TablaRutas<>();
+        tabla.agregar("/api/profesores/{n}/resultados", "numero");
+        tabla.agregar("/api/profesores/todos", "todos");
+
+        assertEquals("todos", buscar(tabla, "/api/profesores/todos"));
+        assertEquals("numero", buscar(tabla, "/api/profesores/5/resultados"));
+        // Empieza como el literal "todos": ya no se prueba como {n}
+        assertNull(buscar(tabla, "/api/profesores/tonto/resultados"));
+    }
+
+    @Test
+    void buscaSobreElCaminoDecodificado() throws IOException {
+        TablaRutas<String> tabla = new TablaRutas<>();
+        tabla.agregarExacta("/img/foto {n}*.png", "archivo");
+        assertEquals("archivo", buscar(tabla, "/img/foto%20%7Bn%7D*.png"));
+    }
+
+    @Test
+    void patronesNoValidosORepetidos() {
+        TablaRutas<String> tabla = new TablaRutas<>();
+        tabla.agregar("/a", "a");
+        assertThrows(IllegalArgumentException.class, () -> tabla.agregar("/a", "otra"));
+        assertThrows(IllegalArgumentException.class, () -> tabla.agregar("/x{n}", "x"));
+        assertThrows(IllegalArgumentException.class, () -> tabla.agregar("/x/{n}y", "x"));
+        assertEquals("a", tabla.registrada("/a", false));
+        assertNull(tabla.registrada("/b", false));
+    }
+
+    @Test
+    void registroEligeElManejadorPorMetodo() throws IOException {
+        RespuestaHttp noPermitido = respuesta();
+        RespuestaHttp siNoHay = respuesta();
+        RespuestaHttp get = respuesta();
+        RespuestaHttp post = respuesta();
+        RegistroRutas rutas = new RegistroRutas((s, m) -> noPermitido, (s, m) -> siNoHay);
+        rutas.agregar("GET", "/evaluar", (s, m) -> get);
+        rutas.agregarAsincrona("POST", "/evaluar", (s, m) -> post);
+
+        assertSame(get, atender(rutas, "GET /evaluar?profesor=1"));
+        RegistroRutas.Destino destino = rutas.buscar(SolicitudHttp.analizar(buffer("POST /evaluar HTTP/1.1\r\n\r\n")));
+        assertTrue(destino.asincrono);
+        assertSame(post, destino.atender(null, true));
+        assertSame(noPermitido, atender(rutas, "DELETE /evaluar"));
+        assertSame(siNoHay, atender(rutas, "GET /nada"));
+        assertThrows(IllegalArgumentException.class, () -> rutas.agregar("GET", "/evaluar", (s, m) -> get));
+    }
+
+    @Test
+    void registroDecidePorSolicitudSiUnaRutaVaAlPool() throws IOException {
+        RegistroRutas rutas = new RegistroRutas((s, m) -> respuesta(), (s, m) -> respuesta());
+        rutas.agregar("GET", "/img/*", (s, m) -> respuesta());
+        rutas.agregarAsincrona("GET", "/api/resultados", (s, m) -> respuesta());
+        rutas.agregarAsincronaSi("GET", "/", SolicitudHttp::tieneConsulta, (s, m) -> respuesta());
+
+        SolicitudHttp inicio = solicitud("/");
+        SolicitudHttp busqueda = solicitud("/?q=ana");
+        assertFalse(rutas.buscar(inicio).aparte(inicio));
+        assertTrue(rutas.buscar(busqueda).aparte(busqueda));
+        SolicitudHttp api = solicitud("/api/resultados");
+        assertTrue(rutas.buscar(api).aparte(api));
+        SolicitudHttp imagen = solicitud("/img/logo.png");
+        assertFalse(rutas.buscar(imagen).aparte(imagen));
+    }
+
+    // ---------------------------------------------------------------------------------
+
+    private static String buscar(TablaRutas<String> tabla, String camino) throws IOException {
+        return tabla.buscar(solicitud(camino));
+    }
+
+    private static SolicitudHttp solicitud(String camino) throws IOException {
+        return SolicitudHttp.analizar(buffer("GET " + camino + " HTTP/1.1\r\n\r\n"));
+    }
+
+    private static RespuestaHttp atender(RegistroRutas rutas, String linea) throws IOException {
+        return rutas.buscar(SolicitudHttp.analizar(buffer(linea + " HTTP/1.1\r\n\r\n"))).atender(null, true);
+    }
+
+    private static RespuestaHttp respuesta() {
+        return new RespuestaHttp(true, ByteBuffer.allocate(0));
+    }
+
+    private static ByteBuffer buffer(String texto) {
+        return ByteBuffer.wrap(texto.getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
@@ -0,0 +1,292 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Almacén concurrente de las evaluaciones, agregadas por profesor.
+ * En lugar de guardar las respuestas de cada estudiante se lleva, para cada pregunta,
+ * cuántas veces se eligió cada puntuación (histograma 1 a escala). De ahí salen, exactas y
+ * en tiempo proporcional a la escala (no a la cantidad de evaluaciones), la cantidad, la
+ * suma, el promedio, la mediana y la desviación estándar de cada pregunta. Las preguntas y
+ * la escala salen del {@link Cuestionario}.
+ *
+ * Además de los totales, cada profesor tiene los mismos contadores por día (UTC) de la
+ * evaluación. Los resultados de un período se obtienen sumando los días que abarca, en
+ * tiempo proporcional a la cantidad de días con evaluaciones y no a la de evaluaciones.
+ * Lo importado o recuperado sin fecha solo cuenta en los totales.
+ *
+ * Registrar una evaluación son incrementos atómicos sin bloqueos; cada profesor tiene
+ * sus propios contadores, así que evaluaciones de profesores distintos no compiten entre sí.
+ * Las lecturas obtienen una copia consistente (ver {@link #resumen(int)}).
+ */
+final class AlmacenEvaluaciones {
+    private static final int REINTENTOS_LECTURA = 32;
+    static final int SIN_FECHA = Integer.MIN_VALUE; // Día de lo que no tiene fecha
+    private static final long MS_POR_DIA = 86_400_000L;
+
+    final Cuestionario cuestionario;
+    private final int escala;
+    private final ConcurrentHashMap<Integer, Agregado> agregados = new ConcurrentHashMap<>();
+
+    AlmacenEvaluaciones(Cuestionario cuestionario) {
+        this.cuestionario = cuestionario;
+        this.escala = cuestionario.escala();
+    }
+
+    /**
+     * Contadores de un profesor. Las evaluaciones iniciadas y terminadas permiten a los
+     * lectores saber si copiaron los contadores mientras alguien los estaba modificando.
+     */
+    private static final class Agregado {
+        final AtomicLongArray histograma;
+        final AtomicLong iniciadas = new AtomicLong();
+        final AtomicLong terminadas = new AtomicLong();
+        // Por día desde 1970-01-01: histograma seguido de la cantidad de evaluaciones (celdas + 1)
+        final ConcurrentSkipListMap<Integer, AtomicLongArray> dias = new ConcurrentSkipListMap<>();
+
+        Agregado(int celdas) {
+            histograma = new AtomicLongArray(celdas);
+        }
+
+        AtomicLongArray dia(int dia) {
+            AtomicLongArray contadores = dias.get(dia);
+            if (contadores == null) {
+                contadores = new AtomicLongArray(histograma.length() + 1);
+                AtomicLongArray previo = dias.putIfAbsent(dia, contadores);
+                if (previo != null) contadores = previo;
+            }
+            return contadores;
+        }
+    }
+
+    /** Día (desde 1970-01-01, UTC) de una fecha en milisegundos */
+    static int dia(long fechaMs) {
+        return (int) Math.floorDiv(fechaMs, MS_POR_DIA);
+    }
+
+    /** Clave de contadores por profesor y día (ver ImportadorEvaluaciones y RegistroEvaluaciones) */
+    static long clave(int profesorId, int dia) {
+        return ((long) profesorId << 32) | (dia & 0xFFFFFFFFL);
+    }
+
+    static int profesorDe(long clave) { return (int) (clave >>> 32); }
+
+    static int diaDe(long clave) { return (int) clave; }
+
+    /**
+     * Copia inmutable de los contadores de un profesor
+     */
+    static final class Resumen {
+        final long evaluaciones;
+        final long[] histograma; // pregunta * escala + (puntuación - 1); no modificar
+        private final Cuestionario cuestionario;
+
+        private Resumen(Cuestionario cuestionario, long evaluaciones, long[] histograma) {
+            this.cuestionario = cuestionario;
+            this.evaluaciones = evaluaciones;
+            this.histograma = histograma;
+        }
+
+        /** Veces que la pregunta recibió la puntuación indicada (1 a escala) */
+        long conteo(int pregunta, int puntuacion) {
+            return histograma[pregunta * cuestionario.escala() + puntuacion - 1];
+        }
+
+        /** Cantidad de respuestas de la pregunta */
+        long respuestas(int pregunta) {
+            long total = 0;
+            for (int v = 1; v <= cuestionario.escala(); v++) total += conteo(pregunta, v);
+            return total;
+        }
+
+        /** Suma de las puntuaciones de la pregunta */
+        long suma(int pregunta) {
+            long total = 0;
+            for (int v = 1; v <= cuestionario.escala(); v++) total += conteo(pregunta, v) * v;
+            return total;
+        }
+
+        double promedio(int pregunta) {
+            long n = respuestas(pregunta);
+            return n == 0 ? 0 : (double) suma(pregunta) / n;
+        }
+
+        /** Mediana de las puntuaciones de la pregunta (con cantidad par, el promedio de las dos centrales) */
+        double mediana(int pregunta) {
+            long n = respuestas(pregunta);
+            if (n == 0) return 0;
+            return (puntuacionEnPosicion(pregunta, (n + 1) / 2) + puntuacionEnPosicion(pregunta, n / 2 + 1)) / 2.0;
+        }
+
+        /** Puntuación que ocupa la posición k (desde 1) si se ordenan las respuestas de menor a mayor */
+        private int puntuacionEnPosicion(int pregunta, long k) {
+            long acumulado = 0;
+            for (int v = 1; v < cuestionario.escala(); v++) {
+                acumulado += conteo(pregunta, v);
+                if (acumulado >= k) return v;
+            }
+            return cuestionario.escala();
+        }
+
+        /** Desviación estándar (poblacional) de las puntuaciones de la pregunta */
+        double desviacion(int pregunta) {
+            long n = respuestas(pregunta);
+            if (n == 0) return 0;
+            long suma = 0;
+            long cuadrados = 0;
+            for (int v = 1; v <= cuestionario.escala(); v++) {
+                long c = conteo(pregunta, v);
+                suma += c * v;
+                cuadrados += c * v * v;
+            }
+            // n² · varianza = n · Σx² - (Σx)², exacto con enteros mientras no se desborde
+            double diferencia = (double) n * cuadrados - (double) suma * suma;
+            return Math.sqrt(Math.max(0, diferencia)) / n;
+        }
+
+        /** Promedios de las preguntas de una categoría, en orden */
+        double[] promedios(int categoria) {
+            int inicio = cuestionario.primeraPregunta(categoria);
+            double[] promedios = new double[cuestionario.preguntasEn(categoria)];
+            for (int i = 0; i < promedios.length; i++) promedios[i] = promedio(inicio + i);
+            return promedios;
+        }
+    }
+
+    /**
+     * Método para registrar una evaluación completa (una puntuación por pregunta, en el
+     * orden global del cuestionario) hecha en la fecha indicada (en milisegundos)
+     */
+    void registrar(int profesorId, long fecha, byte[] puntuaciones) {
+        cuestionario.validar(puntuaciones);
+        Agregado agregado = agregados.computeIfAbsent(profesorId, id -> new Agregado(cuestionario.celdas()));
+        AtomicLongArray contadoresDia = agregado.dia(dia(fecha));
+
+        agregado.iniciadas.incrementAndGet();
+        for (int pregunta = 0; pregunta < puntuaciones.length; pregunta++) {
+            int celda = pregunta * escala + puntuaciones[pregunta] - 1;
+            agregado.histograma.incrementAndGet(celda);
+            contadoresDia.incrementAndGet(celda);
+        }
+        contadoresDia.incrementAndGet(contadoresDia.length() - 1);
+        agregado.terminadas.incrementAndGet();
+    }
+
+    /**
+     * Versión de los datos de un profesor: cantidad de evaluaciones registradas (0 si no tiene).
+     * Cambia con cada evaluación, así que sirve para saber si algo calculado sigue vigente.
+     */
+    long version(int profesorId) {
+        Agregado agregado = agregados.get(profesorId);
+        return agregado == null ? 0 : agregado.terminadas.get();
+    }
+
+    /**
+     * Método para sumar de una vez contadores acumulados fuera del almacén
+     * (por ejemplo al recuperar el registro en disco). histograma usa la misma
+     * disposición que el almacén: pregunta * escala + (puntuación - 1).
+     */
+    void sumar(int profesorId, long[] histograma, long evaluacionesSumadas) {
+        sumar(profesorId, SIN_FECHA, histograma, evaluacionesSumadas);
+    }
+
+    /**
+     * Método para sumar contadores acumulados fuera del almacén que corresponden a un día
+     * (SIN_FECHA: solo a los totales)
+     */
+    void sumar(int profesorId, int dia, long[] histograma, long evaluacionesSumadas) {
+        Agregado agregado = agregados.computeIfAbsent(profesorId, id -> new Agregado(cuestionario.celdas()));
+        AtomicLongArray contadoresDia = dia == SIN_FECHA ? null : agregado.dia(dia);
+        agregado.iniciadas.addAndGet(evaluacionesSumadas);
+        for (int i = 0; i < histograma.length; i++) {
+            if (histograma[i] != 0) {
+                agregado.histograma.addAndGet(i, histograma[i]);
+                if (contadoresDia != null) contadoresDia.addAndGet(i, histograma[i]);
+            }
+        }
+        if (contadoresDia != null) contadoresDia.addAndGet(histograma.length, evaluacionesSumadas);
+        agregado.terminadas.addAndGet(evaluacionesSumadas);
+    }
+
+    /**
+     * Método para obtener una copia consistente de los resultados de un profesor
+     * (null si todavía no tiene evaluaciones).
+     *
+     * Se lee "terminadas", se copian los contadores y se lee "iniciadas": si coinciden,
+     * ninguna evaluación se estaba registrando durante la copia. Si hay escrituras
+     * continuas se reintenta unas cuantas veces y luego se acepta la última copia, que
+     * como mucho incluye parcialmente las evaluaciones que estaban en curso.
+     */
+    Resumen resumen(int profesorId) {
+        Agregado agregado = agregados.get(profesorId);
+        if (agregado == null) return null;
+
+        long[] copia = new long[cuestionario.celdas()];
+        long terminadas = 0;
+        for (int intento = 0; intento < REINTENTOS_LECTURA; intento++) {
+            terminadas = agregado.terminadas.get();
+            for (int i = 0; i < copia.length; i++) copia[i] = agregado.histograma.get(i);
+            if (agregado.iniciadas.get() == terminadas) break;
+            Thread.onSpinWait();
+        }
+        return terminadas == 0 ? null : new Resumen(cuestionario, terminadas, copia);
+    }
+
+    /**
+     * Método para obtener una copia consistente de los resultados de un profesor entre dos
+     * días (inclusive; ver dia(long)), o null si no tiene evaluaciones en ese período.
+     * Se suman los contadores de los días del período, con la misma verificación que resumen(int).
+     */
+    Resumen resumen(int profesorId, int desde, int hasta) {
+        Agregado agregado = agregados.get(profesorId);
+        if (agregado == null || desde > hasta) return null;
+
+        long[] copia = new long[cuestionario.celdas() + 1];
+        for (int intento = 0; intento < REINTENTOS_LECTURA; intento++) {
+            long terminadas = agregado.terminadas.get();
+            Arrays.fill(copia, 0);
+            for (AtomicLongArray dia : agregado.dias.subMap(desde, true, hasta, true).values()) {
+                for (int i = 0; i < copia.length; i++) copia[i] += dia.get(i);
+            }
+            if (agregado.iniciadas.get() == terminadas) break;
+            Thread.onSpinWait();
+        }
+        long evaluacionesPeriodo = copia[copia.length - 1];
+        return evaluacionesPeriodo == 0 ? null
+                : new Resumen(cuestionario, evaluacionesPeriodo, Arrays.copyOf(copia, copia.length - 1));
+    }
+
+    /**
+     * Método para copiar los contadores por día de un profesor, ordenados por día.
+     * Lo usa la instantánea, que se toma sin evaluaciones registrándose al mismo tiempo.
+     */
+    SortedMap<Integer, Resumen> dias(int profesorId) {
+        SortedMap<Integer, Resumen> copia = new TreeMap<>();
+        Agregado agregado = agregados.get(profesorId);
+        if (agregado == null) return copia;
+        for (Map.Entry<Integer, AtomicLongArray> e : agregado.dias.entrySet()) {
+            AtomicLongArray dia = e.getValue();
+            long[] histograma = new long[dia.length() - 1];
+            for (int i = 0; i < histograma.length; i++) histograma[i] = dia.get(i);
+            copia.put(e.getKey(), new Resumen(cuestionario, dia.get(histograma.length), histograma));
+        }
+        return copia;
+    }
+
+    /**
+     * Método para copiar los resultados de todos los profesores, ordenados por id
+     */
+    SortedMap<Integer, Resumen> resumenes() {
+        SortedMap<Integer, Resumen> copia = new TreeMap<>();
+        for (Integer profesorId : agregados.keySet()) {
+            Resumen resumen = resumen(profesorId);
+            if (resumen != null) copia.put(profesorId, resumen);
+        }
+        return copia;
+    }
+}
@@ -0,0 +1,212 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Catálogo de profesores (cada entrada es un profesor con un curso), leído de un archivo.
+ *
+ * Formato (líneas vacías y las que empiezan con # se ignoran):
+ *   id | nombre | curso | imagen
+ *
+ * La búsqueda por id es un acceso directo a un arreglo indexado por id. También hay índices
+ * por nombre y por curso (sin distinguir mayúsculas ni tildes). El catálogo no cambia
+ * después de cargarlo, así que se puede leer desde cualquier hilo sin sincronizar.
+ *
+ * Para buscar por parte del nombre o del curso se arma al cargar un índice de n-gramas: para
+ * cada secuencia de 1, 2 y 3 caracteres, las posiciones (en todos()) de los profesores cuyo
+ * nombre o curso la contiene. Una consulta de hasta 3 caracteres es una sola lectura del
+ * índice; una más larga intersecta las listas de sus trigramas y verifica los candidatos.
+ */
+final class CatalogoProfesores {
+    static final String IMAGEN_POR_OMISION = "/img/profesor.jpg";
+    private static final int MAX_ID = 1_000_000; // Los ids indexan un arreglo: deben ser chicos
+    private static final int N_GRAMA = 3;
+    private static final int MAX_BUSQUEDAS_GUARDADAS = 1024;
+    private static final int[] NINGUNO = new int[0];
+
+    /**
+     * Un profesor con su curso
+     */
+    static final class Profesor {
+        final int id;
+        final String nombre;
+        final String curso;
+        final String imagen;
+
+        Profesor(int id, String nombre, String curso, String imagen) {
+            this.id = id;
+            this.nombre = nombre;
+            this.curso = curso;
+            this.imagen = imagen;
+        }
+    }
+
+    private final Profesor[] porId;               // porId[id], null si no existe
+    private final List<Profesor> todos;           // En orden de id
+    private final Map<String, List<Profesor>> porNombre;
+    private final Map<String, List<Profesor>> porCurso;
+    private final String[] nombresNormalizados;   // Por posición en todos
+    private final String[] cursosNormalizados;
+    private final Map<String, int[]> nGramas;     // n-grama -> posiciones en orden creciente
+    private final Map<String, int[]> busquedas = new ConcurrentHashMap<>(); // Resultados de búsquedas recientes
+
+    private CatalogoProfesores(List<Profesor> profesores) {
+        profesores.sort(Comparator.comparingInt(p -> p.id));
+        this.todos = List.copyOf(profesores);
+        this.porId = new Profesor[profesores.isEmpty() ? 1 : profesores.get(profesores.size() - 1).id + 1];
+        Map<String, List<Profesor>> nombres = new HashMap<>();
+        Map<String, List<Profesor>> cursos = new HashMap<>();
+        for (Profesor p : profesores) {
+            porId[p.id] = p;
+            nombres.computeIfAbsent(normalizar(p.nombre), k -> new ArrayList<>()).add(p);
+            cursos.computeIfAbsent(normalizar(p.curso), k -> new ArrayList<>()).add(p);
+        }
+        nombres.replaceAll((k, v) -> List.copyOf(v));
+        cursos.replaceAll((k, v) -> List.copyOf(v));
+        this.porNombre = nombres;
+        this.porCurso = cursos;
+
+        // Índice de n-gramas de nombres y cursos
+        this.nombresNormalizados = new String[todos.size()];
+        this.cursosNormalizados = new String[todos.size()];
+        Map<String, List<Integer>> listas = new HashMap<>();
+        for (int i = 0; i < todos.size(); i++) {
+            nombresNormalizados[i] = normalizar(todos.get(i).nombre);
+            cursosNormalizados[i] = normalizar(todos.get(i).curso);
+            for (String texto : new String[]{nombresNormalizados[i], cursosNormalizados[i]}) {
+                for (int inicio = 0; inicio < texto.length(); inicio++) {
+                    for (int n = 1; n <= N_GRAMA && inicio + n <= texto.length(); n++) {
+                        List<Integer> lista = listas.computeIfAbsent(texto.substring(inicio, inicio + n), k -> new ArrayList<>());
+                        if (lista.isEmpty() || lista.get(lista.size() - 1) != i) lista.add(i);
+                    }
+                }
+            }
+        }
+        this.nGramas = new HashMap<>(listas.size() * 2);
+        for (Map.Entry<String, List<Integer>> e : listas.entrySet()) {
+            nGramas.put(e.getKey(), e.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    /**
+     * Método para leer y validar el catálogo de un archivo
+     */
+    static CatalogoProfesores cargar(Path archivo) throws IOException {
+        List<Profesor> profesores = new ArrayList<>();
+        Set<Integer> ids = new HashSet<>();
+        int numeroLinea = 0;
+        for (String linea : Files.readAllLines(archivo, StandardCharsets.UTF_8)) {
+            numeroLinea++;
+            linea = linea.strip();
+            if (linea.isEmpty() || linea.startsWith("#")) continue;
+            String[] campos = linea.split("\\|");
+            for (int i = 0; i < campos.length; i++) campos[i] = campos[i].strip();
+            if (campos.length < 3 || campos.length > 4 || campos[1].isEmpty() || campos[2].isEmpty()) {
+                throw error(archivo, numeroLinea, "se espera id | nombre | curso | imagen");
+            }
+            int id;
+            try {
+                id = Integer.parseInt(campos[0]);
+            } catch (NumberFormatException e) {
+                id = 0;
+            }
+            if (id < 1 || id > MAX_ID) throw error(archivo, numeroLinea, "el id debe estar entre 1 y " + MAX_ID);
+            if (!ids.add(id)) throw error(archivo, numeroLinea, "id repetido " + id);
+            String imagen = campos.length == 4 && !campos[3].isEmpty() ? campos[3] : IMAGEN_POR_OMISION;
+            profesores.add(new Profesor(id, campos[1], campos[2], imagen));
+        }
+        if (profesores.isEmpty()) throw new IOException(archivo + ": el catálogo no tiene profesores");
+        return new CatalogoProfesores(profesores);
+    }
+
+    private static IOException error(Path archivo, int linea, String mensaje) {
+        return new IOException(archivo + ", línea " + linea + ": " + mensaje);
+    }
+
+    /**
+     * Texto en minúsculas y sin tildes, para comparar nombres y cursos
+     */
+    static String normalizar(String texto) {
+        String sinTildes = Normalizer.normalize(texto, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return sinTildes.toLowerCase(Locale.ROOT).strip().replaceAll("\\s+", " ");
+    }
+
+    /** Profesor con ese id, o null si no existe */
+    Profesor profesor(int id) {
+        return id > 0 && id < porId.length ? porId[id] : null;
+    }
+
+    /** Todos los profesores, en orden de id */
+    List<Profesor> todos() {
+        return todos;
+    }
+
+    int tamano() {
+        return todos.size();
+    }
+
+    /**
+     * Método para buscar profesores cuyo nombre o curso contiene el texto (sin distinguir
+     * mayúsculas ni tildes). Devuelve las posiciones en todos(), en orden de id, o null si la
+     * consulta está vacía (todos coinciden). El arreglo devuelto no se debe modificar.
+     */
+    int[] buscar(String consulta) {
+        String texto = normalizar(consulta);
+        if (texto.isEmpty()) return null;
+        int[] guardado = busquedas.get(texto);
+        if (guardado != null) return guardado;
+
+        int[] coincidencias;
+        if (texto.length() <= N_GRAMA) {
+            coincidencias = nGramas.getOrDefault(texto, NINGUNO);
+        } else {
+            // Candidatos: los que tienen todos los trigramas de la consulta; se empieza por la lista más corta
+            List<int[]> listas = new ArrayList<>();
+            for (int inicio = 0; inicio + N_GRAMA <= texto.length(); inicio++) {
+                listas.add(nGramas.getOrDefault(texto.substring(inicio, inicio + N_GRAMA), NINGUNO));
+            }
+            listas.sort(Comparator.comparingInt(l -> l.length));
+            int[] candidatos = listas.get(0);
+            for (int i = 1; i < listas.size() && candidatos.length > 0; i++) {
+                candidatos = intersectar(candidatos, listas.get(i));
+            }
+            int n = 0;
+            int[] verificados = new int[candidatos.length];
+            for (int posicion : candidatos) {
+                if (nombresNormalizados[posicion].contains(texto) || cursosNormalizados[posicion].contains(texto)) {
+                    verificados[n++] = posicion;
+                }
+            }
+            coincidencias = Arrays.copyOf(verificados, n);
+        }
+
+        if (busquedas.size() >= MAX_BUSQUEDAS_GUARDADAS) busquedas.clear();
+        busquedas.put(texto, coincidencias);
+        return coincidencias;
+    }
+
+    private static int[] intersectar(int[] a, int[] b) {
+        int[] comun = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else { comun[n++] = a[i]; i++; j++; }
+        }
+        return Arrays.copyOf(comun, n);
+    }
+
+    /** Profesores (uno por curso) con ese nombre */
+    List<Profesor> porNombre(String nombre) {
+        return porNombre.getOrDefault(normalizar(nombre), List.of());
+    }
+
+    /** Profesores que dictan ese curso */
+    List<Profesor> porCurso(String curso) {
+        return porCurso.getOrDefault(normalizar(curso), List.of());
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.ByteArrayOutputStream;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresión de respuestas (Content-Encoding gzip o deflate).
+ *
+ * Los Deflater usan memoria nativa, así que no se crea uno por respuesta: se toman de un
+ * pool y se devuelven con reset(). Se comprime una sola vez en deflate "crudo" y de ahí se
+ * arma cada codificación agregando la cabecera y la cola de su formato (gzip lleva CRC32 y
+ * zlib/deflate lleva Adler32): las dos para las respuestas precalculadas, y solo la pedida
+ * para las que se comprimen en el momento. Brotli no viene con el JDK, por eso no se ofrece.
+ */
+final class Compresion {
+    static final int IDENTIDAD = 0;
+    static final int GZIP = 1;
+    static final int DEFLATE = 2;
+    static final String[] NOMBRES = {null, "gzip", "deflate"};
+
+    static final int MINIMO = 256; // Cuerpos más chicos no vale la pena comprimirlos
+
+    private static final int NIVEL = 6;
+    private static final int MAX_POOL = 64;
+    private static final ConcurrentLinkedQueue<Deflater> pool = new ConcurrentLinkedQueue<>();
+    private static final ThreadLocal<byte[]> TRAMO = ThreadLocal.withInitial(() -> new byte[16 * 1024]);
+
+    private Compresion() {}
+
+    /**
+     * Método para elegir la codificación según Accept-Encoding (gzip si se acepta, si no deflate)
+     */
+    static int elegir(SolicitudHttp solicitud) {
+        String aceptadas = solicitud == null ? null : solicitud.cabecera("accept-encoding");
+        if (aceptadas == null) return IDENTIDAD;
+        boolean gzip = false, deflate = false, comodin = false;
+        boolean gzipExcluido = false, deflateExcluido = false;
+        for (String opcion : aceptadas.toLowerCase(Locale.ROOT).split(",")) {
+            String[] partes = opcion.split(";");
+            String nombre = partes[0].trim();
+            boolean aceptada = true;
+            for (int i = 1; i < partes.length; i++) {
+                String parametro = partes[i].trim();
+                if (parametro.startsWith("q=")) {
+                    try {
+                        aceptada = Double.parseDouble(parametro.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        aceptada = false;
+                    }
+                }
+            }
+            switch (nombre) {
+                case "gzip": case "x-gzip": if (aceptada) gzip = true; else gzipExcluido = true; break;
+                case "deflate": if (aceptada) deflate = true; else deflateExcluido = true; break;
+                case "*": comodin = aceptada; break;
+                default: break;
+            }
+        }
+        if (gzip || (comodin && !gzipExcluido)) return GZIP;
+        if (deflate || (comodin && !deflateExcluido)) return DEFLATE;
+        return IDENTIDAD;
+    }
+
+    /**
+     * Método para indicar si vale la pena comprimir un tipo de contenido
+     * (las imágenes JPEG y PNG ya vienen comprimidas)
+     */
+    static boolean esComprimible(String tipo) {
+        return tipo.startsWith("text/") || tipo.startsWith("image/svg") || tipo.startsWith("application/json")
+                || tipo.startsWith("application/javascript");
+    }
+
+    /**
+     * Método para comprimir un contenido en las dos codificaciones (para las respuestas que
+     * se arman una vez y se guardan). Devuelve {gzip, deflate}, o null si el resultado no es
+     * más chico que el original.
+     */
+    static byte[][] comprimir(byte[] datos, int desde, int largo) {
+        byte[] crudo = deflateCrudo(datos, desde, largo);
+        if (crudo.length + 18 >= largo) return null;
+        return new byte[][]{gzip(crudo, datos, desde, largo), zlib(crudo, datos, desde, largo)};
+    }
+
+    /**
+     * Método para comprimir un contenido solo en la codificación pedida (GZIP o DEFLATE), para
+     * las respuestas que se arman en el momento. Devuelve null si el resultado no es más chico
+     * que el original.
+     */
+    static byte[] comprimir(byte[] datos, int desde, int largo, int codificacion) {
+        byte[] crudo = deflateCrudo(datos, desde, largo);
+        if (crudo.length + 18 >= largo) return null;
+        return codificacion == GZIP ? gzip(crudo, datos, desde, largo) : zlib(crudo, datos, desde, largo);
+    }
+
+    /** Cabecera gzip + deflate crudo + CRC32 y largo original */
+    private static byte[] gzip(byte[] crudo, byte[] datos, int desde, int largo) {
+        CRC32 crc = new CRC32();
+        crc.update(datos, desde, largo);
+        byte[] gzip = new byte[10 + crudo.length + 8];
+        gzip[0] = 0x1f; gzip[1] = (byte) 0x8b; gzip[2] = 8; // ID1 ID2 CM=deflate; el resto de la cabecera en 0
+        gzip[9] = (byte) 0xff;                               // OS desconocido
+        System.arraycopy(crudo, 0, gzip, 10, crudo.length);
+        escribirLE(gzip, 10 + crudo.length, (int) crc.getValue());
+        escribirLE(gzip, 14 + crudo.length, largo);
+        return gzip;
+    }
+
+    /** Cabecera zlib + deflate crudo + Adler32 */
+    private static byte[] zlib(byte[] crudo, byte[] datos, int desde, int largo) {
+        Adler32 adler = new Adler32();
+        adler.update(datos, desde, largo);
+        byte[] zlib = new byte[2 + crudo.length + 4];
+        zlib[0] = 0x78; zlib[1] = (byte) 0x9c;               // Ventana de 32 KB, nivel por defecto
+        System.arraycopy(crudo, 0, zlib, 2, crudo.length);
+        int a = (int) adler.getValue();
+        zlib[zlib.length - 4] = (byte) (a >>> 24);
+        zlib[zlib.length - 3] = (byte) (a >>> 16);
+        zlib[zlib.length - 2] = (byte) (a >>> 8);
+        zlib[zlib.length - 1] = (byte) a;
+        return zlib;
+    }
+
+    private static byte[] deflateCrudo(byte[] datos, int desde, int largo) {
+        Deflater deflater = pool.poll();
+        if (deflater == null) deflater = new Deflater(NIVEL, true);
+        try {
+            deflater.setInput(datos, desde, largo);
+            deflater.finish();
+            byte[] tramo = TRAMO.get();
+            ByteArrayOutputStream salida = new ByteArrayOutputStream(Math.max(64, largo / 4));
+            while (!deflater.finished()) {
+                int n = deflater.deflate(tramo);
+                salida.write(tramo, 0, n);
+            }
+            return salida.toByteArray();
+        } finally {
+            deflater.reset();
+            if (pool.size() < MAX_POOL) pool.offer(deflater);
+            else deflater.end();
+        }
+    }
+
+    private static void escribirLE(byte[] destino, int pos, int valor) {
+        destino[pos] = (byte) valor;
+        destino[pos + 1] = (byte) (valor >>> 8);
+        destino[pos + 2] = (byte) (valor >>> 16);
+        destino[pos + 3] = (byte) (valor >>> 24);
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opciones de arranque del servidor web.
+ * Se leen de los argumentos de main con la forma --clave=valor, por ejemplo:
+ *   java EvaluacionServidor --modo=hilos --hilos=64 --cola=1024 --backlog=512 --timeout=5000 --inactividad=5000
+ */
+final class ConfiguracionServidor {
+    int puerto = 8080;               // Puerto donde correrá el servidor
+    String modo = "hilos";           // "hilos" (un trabajador por conexión) o "nio" (Selector no bloqueante)
+    String ejecutor = "pool";        // "pool" (hilos acotados) o "virtual" (un hilo virtual por conexión)
+    int hilos = Math.max(8, Runtime.getRuntime().availableProcessors() * 4); // Trabajadores del pool
+    int cola = 1024;                 // Conexiones aceptadas esperando un trabajador libre
+    int backlog = 512;               // Conexiones pendientes en la cola del sistema operativo (accept)
+    int timeoutLecturaMs = 10_000;   // Tiempo máximo esperando datos de un cliente
+    int timeoutInactividadMs = 5_000; // Tiempo que una conexión keep-alive puede estar sin solicitudes
+    int maxSolicitudesPorConexion = 100; // Solicitudes atendidas antes de cerrar una conexión keep-alive
+    int umbralMapeoBytes = 16 * 1024; // Archivos web hasta este tamaño se cargan en memoria; los mayores se envían con sendfile
+    // Cache-Control por prefijo de ruta ("prefijo=valor;..."); gana el prefijo más largo
+    String cacheControl = "/img/=public, max-age=86400;/style.css=public, max-age=3600;/=no-cache";
+    String cuestionario = "cuestionario.txt"; // Definición de categorías, preguntas y escala
+    String profesores = "profesores.txt"; // Catálogo de profesores y cursos
+    int profesoresPorPagina = 12;    // Tarjetas por página en la página principal
+    String carpetaDatos = "datos";   // Carpeta del registro de evaluaciones en disco
+    int colaIngesta = 8192;          // Evaluaciones recibidas esperando ser escritas; si se llena se responde 503
+    int maxSuscriptores = 1000;      // Conexiones con resultados en vivo (solo con --modo=nio)
+    int minutosInstantanea = 10;     // Cada cuánto se toma una instantánea de los contadores
+    boolean archivarSegmentos = true; // Segmentos ya cubiertos por una instantánea: archivar (true) o borrar
+    String importar = null;          // Archivo CSV a importar; con esta opción no se inicia el servidor
+
+    /**
+     * Método para construir la configuración a partir de los argumentos de la línea de comandos
+     */
+    static ConfiguracionServidor desdeArgumentos(String[] args) {
+        ConfiguracionServidor config = new ConfiguracionServidor();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Argumento no válido: " + arg + " (se espera --clave=valor)");
+            }
+            String clave = arg.substring(2, arg.indexOf('='));
+            String valor = arg.substring(arg.indexOf('=') + 1);
+            switch (clave) {
+                case "puerto": config.puerto = entero(clave, valor); break;
+                case "modo": config.modo = valor; break;
+                case "ejecutor": config.ejecutor = valor; break;
+                case "hilos": config.hilos = entero(clave, valor); break;
+                case "cola": config.cola = entero(clave, valor); break;
+                case "backlog": config.backlog = entero(clave, valor); break;
+                case "timeout": config.timeoutLecturaMs = entero(clave, valor); break;
+                case "inactividad": config.timeoutInactividadMs = entero(clave, valor); break;
+                case "max-solicitudes": config.maxSolicitudesPorConexion = entero(clave, valor); break;
+                case "umbral-mmap": config.umbralMapeoBytes = entero(clave, valor); break;
+                case "cache-control": config.cacheControl = valor; break;
+                case "cuestionario": config.cuestionario = valor; break;
+                case "profesores": config.profesores = valor; break;
+                case "por-pagina": config.profesoresPorPagina = entero(clave, valor); break;
+                case "datos": config.carpetaDatos = valor; break;
+                case "cola-ingesta": config.colaIngesta = entero(clave, valor); break;
+                case "max-suscriptores": config.maxSuscriptores = entero(clave, valor); break;
+                case "instantanea-min": config.minutosInstantanea = entero(clave, valor); break;
+                case "archivar-segmentos": config.archivarSegmentos = Boolean.parseBoolean(valor); break;
+                case "importar": config.importar = valor; break;
+                default: throw new IllegalArgumentException("Opción desconocida: --" + clave);
+            }
+        }
+        if (!config.modo.equals("hilos") && !config.modo.equals("nio")) {
+            throw new IllegalArgumentException("--modo debe ser 'hilos' o 'nio'");
+        }
+        if (!config.ejecutor.equals("pool") && !config.ejecutor.equals("virtual")) {
+            throw new IllegalArgumentException("--ejecutor debe ser 'pool' o 'virtual'");
+        }
+        return config;
+    }
+
+    private static int entero(String clave, String valor) {
+        try {
+            int n = Integer.parseInt(valor.trim());
+            if (n < 1) throw new NumberFormatException();
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + clave + " debe ser un número positivo");
+        }
+    }
+
+    /**
+     * Método para crear el ejecutor que atenderá las conexiones.
+     * Con "pool" se usa un número fijo de hilos y una cola acotada: si la cola se llena,
+     * execute() lanza RejectedExecutionException y el servidor responde 503.
+     * Con "virtual" se crea un hilo virtual por conexión (requiere Java 21 o superior).
+     */
+    ExecutorService crearEjecutor() {
+        if (ejecutor.equals("virtual")) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.err.println("Hilos virtuales no disponibles en esta JVM, se usa el pool de " + hilos + " hilos");
+            }
+        }
+        AtomicInteger contador = new AtomicInteger();
+        ThreadFactory fabrica = r -> {
+            Thread t = new Thread(r, "http-" + contador.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        return new ThreadPoolExecutor(hilos, hilos, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(cola), fabrica, new ThreadPoolExecutor.AbortPolicy());
+    }
+}
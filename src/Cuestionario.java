@@ -0,0 +1,149 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Definición del cuestionario (categorías, preguntas y escala), leída de un archivo de texto.
+ *
+ * Las preguntas se numeran en orden en un único índice global (0 a preguntas()-1); cada
+ * categoría ocupa un tramo contiguo de ese índice. Una evaluación es entonces un arreglo
+ * plano de puntuaciones (byte[preguntas()]), y los contadores del almacén, el registro en
+ * disco, la consola y las páginas se recorren con ese mismo índice.
+ *
+ * Formato del archivo (líneas vacías y las que empiezan con # se ignoran):
+ *   escala: 5
+ *   categoria: Título de la categoría [| comentario]
+ *   pregunta: Etiqueta corta | Texto completo de la pregunta
+ * "comentario" hace que la consola pida un comentario opcional al terminar la categoría.
+ */
+final class Cuestionario {
+    private final int escala;
+    private final String[] titulos;
+    private final boolean[] pideComentario;
+    private final int[] inicioCategoria;   // Primera pregunta de cada categoría; el último es preguntas()
+    private final String[] etiquetas;
+    private final String[] textos;
+
+    private Cuestionario(int escala, List<String> titulos, List<Boolean> comentarios, List<Integer> inicios,
+                         List<String> etiquetas, List<String> textos) {
+        this.escala = escala;
+        this.titulos = titulos.toArray(new String[0]);
+        this.pideComentario = new boolean[titulos.size()];
+        for (int i = 0; i < pideComentario.length; i++) pideComentario[i] = comentarios.get(i);
+        this.inicioCategoria = new int[inicios.size() + 1];
+        for (int i = 0; i < inicios.size(); i++) inicioCategoria[i] = inicios.get(i);
+        this.inicioCategoria[inicios.size()] = etiquetas.size();
+        this.etiquetas = etiquetas.toArray(new String[0]);
+        this.textos = textos.toArray(new String[0]);
+    }
+
+    /**
+     * Método para leer y validar el cuestionario de un archivo
+     */
+    static Cuestionario cargar(Path archivo) throws IOException {
+        int escala = 0;
+        List<String> titulos = new ArrayList<>();
+        List<Boolean> comentarios = new ArrayList<>();
+        List<Integer> inicios = new ArrayList<>();
+        List<String> etiquetas = new ArrayList<>();
+        List<String> textos = new ArrayList<>();
+
+        int numeroLinea = 0;
+        for (String linea : Files.readAllLines(archivo, StandardCharsets.UTF_8)) {
+            numeroLinea++;
+            linea = linea.strip();
+            if (linea.isEmpty() || linea.startsWith("#")) continue;
+            int dosPuntos = linea.indexOf(':');
+            if (dosPuntos < 0) throw error(archivo, numeroLinea, "se espera clave: valor");
+            String clave = linea.substring(0, dosPuntos).strip();
+            String[] valor = linea.substring(dosPuntos + 1).split("\\|");
+            for (int i = 0; i < valor.length; i++) valor[i] = valor[i].strip();
+
+            switch (clave) {
+                case "escala":
+                    try {
+                        escala = Integer.parseInt(valor[0]);
+                    } catch (NumberFormatException e) {
+                        escala = 0;
+                    }
+                    if (escala < 2 || escala > 9) throw error(archivo, numeroLinea, "la escala debe estar entre 2 y 9");
+                    break;
+                case "categoria":
+                    if (valor[0].isEmpty()) throw error(archivo, numeroLinea, "categoría sin título");
+                    if (!inicios.isEmpty() && inicios.get(inicios.size() - 1) == etiquetas.size()) {
+                        throw error(archivo, numeroLinea, "la categoría anterior no tiene preguntas");
+                    }
+                    titulos.add(valor[0]);
+                    comentarios.add(valor.length > 1 && valor[1].equals("comentario"));
+                    inicios.add(etiquetas.size());
+                    break;
+                case "pregunta":
+                    if (titulos.isEmpty()) throw error(archivo, numeroLinea, "pregunta fuera de una categoría");
+                    if (valor.length != 2 || valor[0].isEmpty() || valor[1].isEmpty()) {
+                        throw error(archivo, numeroLinea, "se espera pregunta: etiqueta | texto");
+                    }
+                    etiquetas.add(valor[0]);
+                    textos.add(valor[1]);
+                    break;
+                default:
+                    throw error(archivo, numeroLinea, "clave desconocida '" + clave + "'");
+            }
+        }
+        if (escala == 0) throw new IOException(archivo + ": falta la escala");
+        if (etiquetas.isEmpty() || inicios.get(inicios.size() - 1) == etiquetas.size()) {
+            throw new IOException(archivo + ": todas las categorías deben tener preguntas");
+        }
+        return new Cuestionario(escala, titulos, comentarios, inicios, etiquetas, textos);
+    }
+
+    private static IOException error(Path archivo, int linea, String mensaje) {
+        return new IOException(archivo + ", línea " + linea + ": " + mensaje);
+    }
+
+    /** Puntuación máxima (las respuestas van de 1 a escala) */
+    int escala() { return escala; }
+
+    int categorias() { return titulos.length; }
+
+    /** Total de preguntas de todas las categorías */
+    int preguntas() { return etiquetas.length; }
+
+    /** Celdas del histograma de un profesor: pregunta * escala + (puntuación - 1) */
+    int celdas() { return etiquetas.length * escala; }
+
+    String titulo(int categoria) { return titulos[categoria]; }
+
+    boolean pideComentario(int categoria) { return pideComentario[categoria]; }
+
+    /** Índice global de la primera pregunta de la categoría */
+    int primeraPregunta(int categoria) { return inicioCategoria[categoria]; }
+
+    int preguntasEn(int categoria) { return inicioCategoria[categoria + 1] - inicioCategoria[categoria]; }
+
+    String etiqueta(int pregunta) { return etiquetas[pregunta]; }
+
+    /** Etiquetas de las preguntas de una categoría, en orden */
+    String[] etiquetasDe(int categoria) {
+        return Arrays.copyOfRange(etiquetas, inicioCategoria[categoria], inicioCategoria[categoria + 1]);
+    }
+
+    String texto(int pregunta) { return textos[pregunta]; }
+
+    /**
+     * Método para validar las puntuaciones de una evaluación completa
+     */
+    void validar(byte[] puntuaciones) {
+        if (puntuaciones.length != preguntas()) {
+            throw new IllegalArgumentException("Se esperan " + preguntas() + " puntuaciones");
+        }
+        for (byte puntuacion : puntuaciones) {
+            if (puntuacion < 1 || puntuacion > escala) {
+                throw new IllegalArgumentException("Las puntuaciones deben estar entre 1 y " + escala);
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resultados en vivo por Server-Sent Events (/api/profesores/{id}/eventos).
+ *
+ * Un solo hilo revisa cada INTERVALO_MS la versión de los profesores que tienen suscriptores.
+ * Si llegaron evaluaciones, arma un único evento "delta" con lo que cambió desde la revisión
+ * anterior (por pregunta: respuestas, promedio y lo sumado a cada puntuación) y entrega el
+ * mismo arreglo de bytes (una vista por suscriptor) a todos: muchas pantallas mirando al
+ * mismo profesor cuestan una sola serialización por intervalo, y varias evaluaciones dentro
+ * del intervalo salen juntas en un solo evento.
+ *
+ * Al suscribirse se recibe primero un evento "estado" con los histogramas completos, tomado
+ * en la misma revisión que los deltas siguientes, así el cliente solo tiene que sumarlos.
+ * Sin cambios se envía cada tanto un comentario para mantener viva la conexión y detectar
+ * clientes que se fueron. Un suscriptor que acumula demasiados eventos sin leer se desconecta.
+ *
+ * Solo existe en el modo NIO, donde las escrituras no bloquean y un suscriptor no ocupa un hilo.
+ */
+final class DifusorResultados {
+    private static final long INTERVALO_MS = 500;
+    private static final int INTERVALOS_LATIDO = 30;    // Sin eventos, un latido cada 15 s
+    private static final int MAX_PENDIENTES = 64;       // Eventos sin enviar antes de desconectar a un suscriptor
+    private static final ByteBuffer LATIDO = evento(null, ": latido\n\n".getBytes(StandardCharsets.UTF_8));
+    private static final ByteBuffer FIN = ByteBuffer.allocate(0);
+
+    private final AlmacenEvaluaciones almacen;
+    private final int maxSuscriptores;
+    private final AtomicInteger suscriptores = new AtomicInteger();
+    private final ConcurrentHashMap<Integer, Canal> canales = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService revisor;
+    private int intervalosSinLatido;
+
+    /**
+     * Suscriptores de un profesor y lo último que se les envió
+     */
+    private static final class Canal {
+        final int profesorId;
+        final List<Suscripcion> suscripciones = new CopyOnWriteArrayList<>();
+        AlmacenEvaluaciones.Resumen ultimo; // Resultados de la última revisión (null: sin evaluaciones)
+        ByteBuffer estado;                  // Evento "estado" de esa revisión, armado al primer pedido
+
+        Canal(int profesorId) {
+            this.profesorId = profesorId;
+        }
+    }
+
+    /**
+     * Conexión suscrita a los eventos de un profesor. El servidor NIO la vacía con
+     * siguienteSiHay() cada vez que recibe el aviso.
+     */
+    final class Suscripcion {
+        private final Canal canal;
+        private final BlockingQueue<ByteBuffer> eventos = new ArrayBlockingQueue<>(MAX_PENDIENTES + 1);
+        private volatile Runnable aviso;
+        private volatile boolean cerrada;
+
+        private Suscripcion(Canal canal) {
+            this.canal = canal;
+        }
+
+        /** Acción a ejecutar (desde el hilo revisor) cada vez que hay un evento nuevo */
+        void alRecibir(Runnable aviso) {
+            this.aviso = aviso;
+            if (!eventos.isEmpty()) aviso.run();
+        }
+
+        /** Siguiente evento si ya hay uno (null si no); ver terminada() */
+        ByteBuffer siguienteSiHay() {
+            ByteBuffer evento = eventos.poll();
+            return evento == null || evento == FIN ? evento : evento.duplicate();
+        }
+
+        /** Si el evento devuelto por siguienteSiHay() indica que la suscripción terminó */
+        boolean terminada(ByteBuffer evento) {
+            return evento == FIN;
+        }
+
+        private void entregar(ByteBuffer evento) {
+            if (cerrada) return;
+            if (eventos.size() >= MAX_PENDIENTES) {
+                cerrar(); // Cliente demasiado lento
+                return;
+            }
+            eventos.offer(evento);
+            Runnable a = aviso;
+            if (a != null) a.run();
+        }
+
+        /** Método para terminar la suscripción (también cuando el cliente se desconecta) */
+        void cerrar() {
+            synchronized (canal) {
+                if (cerrada) return;
+                cerrada = true;
+                canal.suscripciones.remove(this);
+                if (canal.suscripciones.isEmpty()) canales.remove(canal.profesorId, canal);
+            }
+            suscriptores.decrementAndGet();
+            eventos.clear();
+            eventos.offer(FIN);
+            Runnable a = aviso;
+            if (a != null) a.run();
+        }
+    }
+
+    DifusorResultados(AlmacenEvaluaciones almacen, int maxSuscriptores) {
+        this.almacen = almacen;
+        this.maxSuscriptores = maxSuscriptores;
+        this.revisor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "difusor-resultados");
+            t.setDaemon(true);
+            return t;
+        });
+        revisor.scheduleWithFixedDelay(this::revisar, INTERVALO_MS, INTERVALO_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Método para suscribirse a los resultados de un profesor. Devuelve null si ya se
+     * alcanzó el máximo de suscriptores.
+     */
+    Suscripcion suscribir(int profesorId) {
+        if (suscriptores.incrementAndGet() > maxSuscriptores) {
+            suscriptores.decrementAndGet();
+            return null;
+        }
+        while (true) {
+            Canal canal = canales.computeIfAbsent(profesorId, Canal::new);
+            synchronized (canal) {
+                if (canales.get(profesorId) != canal) continue; // Se quedó sin suscriptores y se quitó
+                if (canal.suscripciones.isEmpty()) canal.ultimo = almacen.resumen(profesorId);
+                if (canal.estado == null) canal.estado = evento("estado", eventoEstado(profesorId, canal.ultimo));
+                Suscripcion suscripcion = new Suscripcion(canal);
+                suscripcion.eventos.offer(canal.estado);
+                canal.suscripciones.add(suscripcion);
+                return suscripcion;
+            }
+        }
+    }
+
+    /**
+     * Revisión periódica (hilo revisor): un evento por profesor con cambios, compartido por sus suscriptores
+     */
+    private void revisar() {
+        try {
+            boolean latido = ++intervalosSinLatido >= INTERVALOS_LATIDO;
+            if (latido) intervalosSinLatido = 0;
+            for (Canal canal : canales.values()) {
+                // Bajo el bloqueo del canal: una suscripción nueva ve el estado anterior o el nuevo, nunca a medias
+                synchronized (canal) {
+                    long anteriores = canal.ultimo == null ? 0 : canal.ultimo.evaluaciones;
+                    if (almacen.version(canal.profesorId) != anteriores) {
+                        AlmacenEvaluaciones.Resumen actual = almacen.resumen(canal.profesorId);
+                        ByteBuffer delta = evento("delta", eventoDelta(canal.profesorId, canal.ultimo, actual));
+                        canal.ultimo = actual;
+                        canal.estado = null;
+                        for (Suscripcion s : canal.suscripciones) s.entregar(delta);
+                    } else if (latido) {
+                        for (Suscripcion s : canal.suscripciones) s.entregar(LATIDO);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error al enviar resultados en vivo: " + e);
+        }
+    }
+
+    /**
+     * {"profesor":1,"evaluaciones":N,"escala":5,"preguntas":[{"pregunta":1,"respuestas":N,"promedio":4.25,
+     * "histograma":[n1,...]}]}
+     */
+    private byte[] eventoEstado(int profesorId, AlmacenEvaluaciones.Resumen resumen) {
+        Cuestionario cuestionario = almacen.cuestionario;
+        EscritorJson json = EscritorJson.delHilo();
+        json.inicioObjeto().campo("profesor").valor(profesorId)
+                .campo("evaluaciones").valor(resumen == null ? 0 : resumen.evaluaciones)
+                .campo("escala").valor(cuestionario.escala())
+                .campo("preguntas").inicioArreglo();
+        for (int pregunta = 0; pregunta < cuestionario.preguntas(); pregunta++) {
+            json.inicioObjeto().campo("pregunta").valor(pregunta + 1)
+                    .campo("respuestas").valor(resumen == null ? 0 : resumen.respuestas(pregunta))
+                    .campo("promedio").valor(resumen == null ? 0 : resumen.promedio(pregunta))
+                    .campo("histograma").inicioArreglo();
+            for (int v = 1; v <= cuestionario.escala(); v++) json.valor(resumen == null ? 0 : resumen.conteo(pregunta, v));
+            json.finArreglo().finObjeto();
+        }
+        return json.finArreglo().finObjeto().aBytes();
+    }
+
+    /**
+     * {"profesor":1,"evaluaciones":N,"nuevas":k,"preguntas":[{"pregunta":1,"respuestas":N,"promedio":4.25,
+     * "delta":[d1,...]}]}, solo con las preguntas que cambiaron
+     */
+    private byte[] eventoDelta(int profesorId, AlmacenEvaluaciones.Resumen antes, AlmacenEvaluaciones.Resumen ahora) {
+        Cuestionario cuestionario = almacen.cuestionario;
+        EscritorJson json = EscritorJson.delHilo();
+        json.inicioObjeto().campo("profesor").valor(profesorId)
+                .campo("evaluaciones").valor(ahora.evaluaciones)
+                .campo("nuevas").valor(ahora.evaluaciones - (antes == null ? 0 : antes.evaluaciones))
+                .campo("preguntas").inicioArreglo();
+        for (int pregunta = 0; pregunta < cuestionario.preguntas(); pregunta++) {
+            if (antes != null && ahora.respuestas(pregunta) == antes.respuestas(pregunta)) continue;
+            json.inicioObjeto().campo("pregunta").valor(pregunta + 1)
+                    .campo("respuestas").valor(ahora.respuestas(pregunta))
+                    .campo("promedio").valor(ahora.promedio(pregunta))
+                    .campo("delta").inicioArreglo();
+            for (int v = 1; v <= cuestionario.escala(); v++) {
+                json.valor(ahora.conteo(pregunta, v) - (antes == null ? 0 : antes.conteo(pregunta, v)));
+            }
+            json.finArreglo().finObjeto();
+        }
+        return json.finArreglo().finObjeto().aBytes();
+    }
+
+    /**
+     * Evento SSE ya codificado: "event: tipo\ndata: json\n\n" (con tipo null, los datos tal cual)
+     */
+    private static ByteBuffer evento(String tipo, byte[] datos) {
+        if (tipo == null) return ByteBuffer.wrap(datos);
+        byte[] inicio = ("event: " + tipo + "\ndata: ").getBytes(StandardCharsets.US_ASCII);
+        byte[] evento = new byte[inicio.length + datos.length + 2];
+        System.arraycopy(inicio, 0, evento, 0, inicio.length);
+        System.arraycopy(datos, 0, evento, inicio.length, datos.length);
+        evento[evento.length - 2] = '\n';
+        evento[evento.length - 1] = '\n';
+        return ByteBuffer.wrap(evento);
+    }
+}
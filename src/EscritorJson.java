@@ -0,0 +1,144 @@
+import java.util.Arrays;
+
+/**
+ * Escritor de JSON sobre un arreglo de bytes reutilizable.
+ * Escribe los números y el texto directamente como bytes UTF-8, sin armar Strings
+ * intermedios. Cada hilo reutiliza su propio escritor (ver {@link #delHilo()}); el resultado
+ * se copia una sola vez al arreglo del cuerpo de la respuesta.
+ */
+final class EscritorJson {
+    private static final ThreadLocal<EscritorJson> DEL_HILO = ThreadLocal.withInitial(EscritorJson::new);
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final int CAPACIDAD_RETENIDA = 1 << 20; // Buffers más grandes no se guardan para el hilo
+
+    private byte[] buf = new byte[8192];
+    private int largo;
+    private boolean necesitaComa; // El próximo valor o campo va precedido de una coma
+
+    /**
+     * Método para obtener el escritor del hilo actual, vacío
+     */
+    static EscritorJson delHilo() {
+        EscritorJson escritor = DEL_HILO.get();
+        if (escritor.buf.length > CAPACIDAD_RETENIDA) escritor.buf = new byte[8192];
+        escritor.largo = 0;
+        escritor.necesitaComa = false;
+        return escritor;
+    }
+
+    EscritorJson inicioObjeto() { separar(); agregar('{'); necesitaComa = false; return this; }
+    EscritorJson finObjeto() { agregar('}'); necesitaComa = true; return this; }
+    EscritorJson inicioArreglo() { separar(); agregar('['); necesitaComa = false; return this; }
+    EscritorJson finArreglo() { agregar(']'); necesitaComa = true; return this; }
+
+    /** Nombre de un campo; el siguiente valor escrito es su valor */
+    EscritorJson campo(String nombre) {
+        texto(nombre);
+        agregar(':');
+        necesitaComa = false;
+        return this;
+    }
+
+    EscritorJson valor(long n) {
+        separar();
+        entero(n);
+        necesitaComa = true;
+        return this;
+    }
+
+    /** Número con dos decimales fijos (suficiente para promedios de 1 a 5) */
+    EscritorJson valor(double n) {
+        separar();
+        if (Double.isNaN(n) || Double.isInfinite(n)) {
+            agregarAscii("null");
+        } else {
+            long centesimos = Math.round(n * 100);
+            if (centesimos < 0) { agregar('-'); centesimos = -centesimos; }
+            entero(centesimos / 100);
+            agregar('.');
+            agregar((byte) ('0' + (centesimos % 100) / 10));
+            agregar((byte) ('0' + centesimos % 10));
+        }
+        necesitaComa = true;
+        return this;
+    }
+
+    EscritorJson valor(String s) {
+        texto(s);
+        necesitaComa = true;
+        return this;
+    }
+
+    /** Copia del contenido escrito, del tamaño exacto */
+    byte[] aBytes() {
+        return Arrays.copyOf(buf, largo);
+    }
+
+    private void separar() {
+        if (necesitaComa) agregar(',');
+    }
+
+    private void texto(String s) {
+        separar();
+        agregar('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                agregar('\\');
+                agregar((byte) c);
+            } else if (c < 0x20) {
+                agregarAscii("\\u00");
+                agregar(HEX[c >> 4]);
+                agregar(HEX[c & 0xf]);
+            } else if (c < 0x80) {
+                agregar((byte) c);
+            } else if (c < 0x800) {
+                agregar((byte) (0xc0 | (c >> 6)));
+                agregar((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                agregar((byte) (0xf0 | (cp >> 18)));
+                agregar((byte) (0x80 | ((cp >> 12) & 0x3f)));
+                agregar((byte) (0x80 | ((cp >> 6) & 0x3f)));
+                agregar((byte) (0x80 | (cp & 0x3f)));
+            } else {
+                agregar((byte) (0xe0 | (c >> 12)));
+                agregar((byte) (0x80 | ((c >> 6) & 0x3f)));
+                agregar((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+        agregar('"');
+    }
+
+    private void entero(long n) {
+        if (n == Long.MIN_VALUE) { agregarAscii("-9223372036854775808"); return; }
+        if (n < 0) { agregar('-'); n = -n; }
+        asegurar(20);
+        int inicio = largo;
+        do {
+            buf[largo++] = (byte) ('0' + n % 10);
+            n /= 10;
+        } while (n > 0);
+        // Los dígitos quedaron al revés
+        for (int i = inicio, j = largo - 1; i < j; i++, j--) {
+            byte t = buf[i]; buf[i] = buf[j]; buf[j] = t;
+        }
+    }
+
+    private void agregarAscii(String s) {
+        for (int i = 0; i < s.length(); i++) agregar((byte) s.charAt(i));
+    }
+
+    private void agregar(char c) {
+        agregar((byte) c);
+    }
+
+    private void agregar(byte b) {
+        if (largo == buf.length) asegurar(1);
+        buf[largo++] = b;
+    }
+
+    private void asegurar(int extra) {
+        if (largo + extra > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, largo + extra));
+    }
+}
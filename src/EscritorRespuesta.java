@@ -0,0 +1,209 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Escritor de respuestas HTTP con cuerpo de texto.
+ *
+ * El texto (una o varias partes, sin concatenarlas) se codifica a UTF-8 una sola vez en un
+ * arreglo reutilizable del hilo, así el largo es el de los bytes y no el de los caracteres.
+ * La cabecera se arma con fragmentos ya codificados (línea de estado, Content-Type,
+ * Connection, ...) y se copia junto con el cuerpo en un único arreglo del tamaño exacto: lo
+ * único que se crea por respuesta es ese arreglo, que puede quedar en caché o en la cola
+ * del modo NIO sin depender del arreglo del hilo.
+ */
+final class EscritorRespuesta {
+    private static final ThreadLocal<EscritorRespuesta> DEL_HILO = ThreadLocal.withInitial(EscritorRespuesta::new);
+    private static final int CAPACIDAD_RETENIDA = 1 << 20; // Arreglos más grandes no se guardan para el hilo
+
+    // Fragmentos fijos de la cabecera
+    private static final byte[] CONTENT_LENGTH = ascii("Content-Length: ");
+    private static final byte[] CONTENT_ENCODING = ascii("Content-Encoding: ");
+    private static final byte[] VARY = ascii("Vary: Accept-Encoding\r\n");
+    private static final byte[] CERRAR = ascii("Connection: close\r\n");
+    private static final byte[] CRLF = ascii("\r\n");
+    private static volatile byte[] mantenerAbierta = ascii("Connection: keep-alive\r\n");
+    // Líneas de estado y de Content-Type ya usadas (salen de constantes del código, son pocas)
+    private static final ConcurrentHashMap<String, byte[]> LINEAS_ESTADO = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, byte[]> LINEAS_TIPO = new ConcurrentHashMap<>();
+
+    private byte[] cuerpo = new byte[16 * 1024];
+    private int largo;
+
+    /**
+     * Método para fijar los tiempos que se anuncian en la cabecera Keep-Alive (una vez, al iniciar)
+     */
+    static void configurar(int timeoutInactividadMs, int maxSolicitudes) {
+        mantenerAbierta = ascii("Connection: keep-alive\r\nKeep-Alive: timeout=" + (timeoutInactividadMs / 1000)
+                + ", max=" + maxSolicitudes + "\r\n");
+    }
+
+    /**
+     * Método para obtener el escritor del hilo actual, vacío
+     */
+    static EscritorRespuesta delHilo() {
+        EscritorRespuesta escritor = DEL_HILO.get();
+        if (escritor.cuerpo.length > CAPACIDAD_RETENIDA) escritor.cuerpo = new byte[16 * 1024];
+        escritor.largo = 0;
+        return escritor;
+    }
+
+    /** Agrega texto al cuerpo, codificado en UTF-8 */
+    EscritorRespuesta texto(CharSequence s) {
+        asegurar(s.length() * 3);
+        byte[] b = cuerpo;
+        int n = largo;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                b[n++] = (byte) c;
+            } else if (c < 0x800) {
+                b[n++] = (byte) (0xc0 | (c >> 6));
+                b[n++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    b[n++] = (byte) (0xf0 | (cp >> 18));
+                    b[n++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    b[n++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    b[n++] = (byte) (0x80 | (cp & 0x3f));
+                } else {
+                    b[n++] = '?'; // Surrogate suelto, igual que String.getBytes
+                }
+            } else {
+                b[n++] = (byte) (0xe0 | (c >> 12));
+                b[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                b[n++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        largo = n;
+        return this;
+    }
+
+    /** Bytes del cuerpo escrito hasta ahora */
+    int largo() {
+        return largo;
+    }
+
+    /** Copia del cuerpo, del tamaño exacto (para respuestas que se guardan con sus variantes) */
+    byte[] aBytes() {
+        return Arrays.copyOf(cuerpo, largo);
+    }
+
+    /**
+     * Método para armar la respuesta con el cuerpo escrito, sin comprimir
+     */
+    RespuestaHttp respuesta(String estado, String tipo, boolean mantener) {
+        return new RespuestaHttp(mantener, completa(estado, tipo, null, cuerpo, largo, mantener));
+    }
+
+    /**
+     * Método para armar la respuesta con el cuerpo escrito, comprimida en el momento con la
+     * codificación elegida si vale la pena (para contenido que no se guarda en caché)
+     */
+    RespuestaHttp respuesta(String estado, String tipo, int codificacion, boolean mantener) {
+        if (codificacion == Compresion.IDENTIDAD || largo < Compresion.MINIMO) return respuesta(estado, tipo, mantener);
+        byte[] comprimido = Compresion.comprimir(cuerpo, 0, largo, codificacion);
+        if (comprimido == null) return respuesta(estado, tipo, mantener);
+        return new RespuestaHttp(mantener, completa(estado, tipo, Compresion.NOMBRES[codificacion],
+                comprimido, comprimido.length, mantener));
+    }
+
+    /**
+     * Cabecera y cuerpo en un solo buffer; con codificacion distinta de null se agregan
+     * Content-Encoding y Vary
+     */
+    private static ByteBuffer completa(String estado, String tipo, String codificacion, byte[] cuerpo, int largo,
+                                       boolean mantener) {
+        int largoCabecera = largoCabecera(estado, tipo, largo, "", mantener)
+                + (codificacion == null ? 0 : CONTENT_ENCODING.length + codificacion.length() + CRLF.length + VARY.length);
+        byte[] salida = new byte[largoCabecera + largo];
+        int pos = inicioCabecera(salida, 0, estado, tipo, largo);
+        if (codificacion != null) {
+            pos = copiar(CONTENT_ENCODING, salida, pos);
+            pos = ascii(codificacion, salida, pos);
+            pos = copiar(CRLF, salida, pos);
+            pos = copiar(VARY, salida, pos);
+        }
+        pos = finCabecera(salida, pos, "", mantener);
+        System.arraycopy(cuerpo, 0, salida, pos, largo);
+        return ByteBuffer.wrap(salida);
+    }
+
+    /**
+     * Método para codificar solo la línea de estado y las cabeceras. Con tipo null y largo
+     * negativo se omiten Content-Type y Content-Length. extras son cabeceras ya formateadas
+     * ("Nombre: valor\r\n...").
+     */
+    static ByteBuffer cabecera(String estado, String tipo, long largo, String extras, boolean mantener) {
+        byte[] salida = new byte[largoCabecera(estado, tipo, largo, extras, mantener)];
+        finCabecera(salida, inicioCabecera(salida, 0, estado, tipo, largo), extras, mantener);
+        return ByteBuffer.wrap(salida);
+    }
+
+    private static int largoCabecera(String estado, String tipo, long largo, String extras, boolean mantener) {
+        int total = lineaEstado(estado).length + (tipo != null ? lineaTipo(tipo).length : 0);
+        if (largo >= 0) total += CONTENT_LENGTH.length + digitos(largo) + CRLF.length;
+        return total + extras.length() + (mantener ? mantenerAbierta.length : CERRAR.length) + CRLF.length;
+    }
+
+    /** Línea de estado, Content-Type y Content-Length */
+    private static int inicioCabecera(byte[] salida, int pos, String estado, String tipo, long largo) {
+        pos = copiar(lineaEstado(estado), salida, pos);
+        if (tipo != null) pos = copiar(lineaTipo(tipo), salida, pos);
+        if (largo >= 0) {
+            pos = copiar(CONTENT_LENGTH, salida, pos);
+            int fin = pos + digitos(largo);
+            for (int i = fin - 1; i >= pos; i--) {
+                salida[i] = (byte) ('0' + largo % 10);
+                largo /= 10;
+            }
+            pos = copiar(CRLF, salida, fin);
+        }
+        return pos;
+    }
+
+    /** Cabeceras adicionales, Connection y la línea vacía final */
+    private static int finCabecera(byte[] salida, int pos, String extras, boolean mantener) {
+        pos = ascii(extras, salida, pos);
+        pos = copiar(mantener ? mantenerAbierta : CERRAR, salida, pos);
+        return copiar(CRLF, salida, pos);
+    }
+
+    private static byte[] lineaEstado(String estado) {
+        return LINEAS_ESTADO.computeIfAbsent(estado, e -> ascii("HTTP/1.1 " + e + "\r\n"));
+    }
+
+    private static byte[] lineaTipo(String tipo) {
+        return LINEAS_TIPO.computeIfAbsent(tipo, t -> ascii("Content-Type: " + t + "\r\n"));
+    }
+
+    private static int digitos(long n) {
+        int d = 1;
+        while (n >= 10) {
+            n /= 10;
+            d++;
+        }
+        return d;
+    }
+
+    private static int copiar(byte[] fragmento, byte[] salida, int pos) {
+        System.arraycopy(fragmento, 0, salida, pos, fragmento.length);
+        return pos + fragmento.length;
+    }
+
+    /** Las cabeceras son ISO-8859-1: un byte por carácter */
+    private static int ascii(String s, byte[] salida, int pos) {
+        for (int i = 0; i < s.length(); i++) salida[pos++] = (byte) s.charAt(i);
+        return pos;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private void asegurar(int n) {
+        if (largo + n > cuerpo.length) cuerpo = Arrays.copyOf(cuerpo, Math.max(cuerpo.length * 2, largo + n));
+    }
+}
@@ -1,29 +1,58 @@
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.*;
 import java.net.URLDecoder;
 
 public class EvaluacionServidor {
     // Configuración básica del servidor
     // ServerSocket que nos permitirá manipular la conexión desde el lado del servidor
-    private static final int PUERTO = 8080; // Puerto donde correrá el servidor
+    private static ConfiguracionServidor config = new ConfiguracionServidor(); // Puerto, hilos, timeouts...
     private static final String CARPETA_WEB = "web"; // Carpeta con archivos CSS e imágenes
 
+    // Categorías, preguntas y escala del cuestionario (ver Cuestionario)
+    private static Cuestionario cuestionario;
+    // Profesores y cursos que se pueden evaluar (ver CatalogoProfesores)
+    private static CatalogoProfesores catalogo;
+    // Parte inicial de las páginas (primera página del catálogo, sin búsqueda) y menú de la consola, armados al iniciar
+    private static String htmlInicio;
+    private static String menuProfesores;
     // Almacenamiento de las evaluaciones
-    private static Map<Integer, int[][]> evaluaciones = new HashMap<>();
-    /*
-     * Estructura de almacenamiento:
-     * - Key: ID del profesor (1, 2 o 3)
-     * - Value: Array bidimensional con las respuestas:
-     *   [0] = Metodología (5 preguntas)
-     *   [1] = Comunicación (3 preguntas)
-     *   [2] = Evaluación (3 preguntas)
-     *   [3] = Actitudes (3 preguntas)
-     *   [4] = Valoración (1 pregunta)
-     */
-
-    // HTML básico de la página (parte inicial)
+    // Se escribe desde la consola y se lee desde los hilos del servidor web al mismo tiempo,
+    // por eso guarda contadores agregados y concurrentes (ver AlmacenEvaluaciones)
+    private static AlmacenEvaluaciones evaluaciones;
+    // Registro en disco: cada evaluación se guarda antes de sumarse al almacén
+    private static RegistroEvaluaciones registro;
+    // Resultados en vivo (Server-Sent Events) para las páginas abiertas; null si no se ofrecen
+    private static DifusorResultados difusor;
+
+    // Página principal, páginas de error y archivos de la carpeta web ya codificados
+    private static RespuestasEstaticas respuestasEstaticas;
+    // Rutas del servidor web y sus manejadores (ver crearRutas)
+    private static RegistroRutas rutas;
+
+    // Páginas de resultados ya codificadas por profesor (ver respuestaResultados)
+    private static final ConcurrentHashMap<Integer, PaginaResultados> paginasResultados = new ConcurrentHashMap<>();
+
+    /**
+     * Respuesta de /evaluar lista para enviar, con la versión de los datos con que se generó
+     */
+    private static final class PaginaResultados {
+        final long version;
+        final RespuestaHttp[] variantes; // Sin comprimir, gzip y deflate (ver crearVariantes)
+
+        PaginaResultados(long version, RespuestaHttp[] variantes) {
+            this.version = version;
+            this.variantes = variantes;
+        }
+    }
+
+    // HTML básico de la página (parte inicial, antes de las tarjetas de los profesores)
     private static final String HTML_INICIO = """
         <!DOCTYPE html>
         <html lang="es">
@@ -39,38 +68,35 @@ public class EvaluacionServidor {
                 <div class="parte-1">
                     <img src="/img/logo.png" alt="Logo"  >
                 </div>
+        """;
+
+    // Formulario de búsqueda y comienzo de las tarjetas: texto buscado
+    private static final String HTML_BUSCADOR = """
+                <form class="buscador" action="/" method="get">
+                    <input type="search" name="q" value="%s" placeholder="Buscar por nombre o curso">
+                    <button type="submit">Buscar</button>
+                </form>
                 <div class="parte-2">
+        """;
+
+    // Tarjeta de un profesor en la página principal: imagen, id, nombre, curso, id
+    private static final String HTML_TARJETA_PROFESOR = """
                     <div class="card">
                         <div class="card-img">
-                            <img src="/img/profesor.jpg" alt="Profesor 1">
-                        </div>
-                        <div class="card-content">
-                            <h3 class="card-title">Jaime Zapata</h3>
-                            <p class="card-text">Metodologías Ágiles</p>
-                            <a class="btn-revisar" href="/evaluar?profesor=1">Revisar</a>
-                        </div>
-                    </div>
-                    <div class="card">
-                        <div class="card-img">
-                            <img src="/img/profesor.jpg" alt="Profesor 2">
-                        </div>
-                        <div class="card-content">
-                            <h3 class="card-title">Jaime Zapata</h3>
-                            <p class="card-text">Lógica de Programación</p>
-                            <a class="btn-revisar" href="/evaluar?profesor=2">Revisar</a>
-                        </div>
-                    </div>
-                    <div class="card">
-                        <div class="card-img">
-                            <img src="/img/profesor.jpg" alt="Profesor 3">
+                            <img src="%s" alt="Profesor %d">
                         </div>
                         <div class="card-content">
-                            <h3 class="card-title">Luis Zapata</h3>
-                            <p class="card-text">Introducción a la programación</p>
-                            <a class="btn-revisar" href="/evaluar?profesor=3">Revisar</a>
+                            <h3 class="card-title">%s</h3>
+                            <p class="card-text">%s</p>
+                            <a class="btn-revisar" href="/evaluar?profesor=%d">Revisar</a>
                         </div>
                     </div>
+        """;
+
+    // HTML después de las tarjetas de los profesores (con la paginación)
+    private static final String HTML_DESPUES_TARJETAS = """
                 </div>
+                <div class="paginacion">%s</div>
                 <div class="parte-3">
                     <img src="/img/logo.png" alt="Logo"  >
                 </div>
@@ -84,6 +110,56 @@ public class EvaluacionServidor {
         """;
 
     public static void main(String[] args) {
+        // Leemos las opciones de arranque (--hilos=64, --backlog=512, ...)
+        try {
+            config = ConfiguracionServidor.desdeArgumentos(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error en los argumentos: " + e.getMessage());
+            return;
+        }
+        EscritorRespuesta.configurar(config.timeoutInactividadMs, config.maxSolicitudesPorConexion);
+
+        // Leemos el cuestionario: de él salen la consola, las páginas y el formato en disco
+        try {
+            cuestionario = Cuestionario.cargar(Paths.get(config.cuestionario));
+        } catch (IOException e) {
+            System.err.println("Error al leer el cuestionario: " + e.getMessage());
+            return;
+        }
+        evaluaciones = new AlmacenEvaluaciones(cuestionario);
+
+        // Leemos el catálogo de profesores y armamos una sola vez la parte de las páginas y el menú que salen de él
+        try {
+            catalogo = CatalogoProfesores.cargar(Paths.get(config.profesores));
+        } catch (IOException e) {
+            System.err.println("Error al leer el catálogo de profesores: " + e.getMessage());
+            return;
+        }
+        htmlInicio = generarHtmlInicio("", 1);
+        menuProfesores = generarMenuProfesores();
+
+        // Recuperamos las evaluaciones guardadas en disco
+        try {
+            registro = RegistroEvaluaciones.abrir(Paths.get(config.carpetaDatos), evaluaciones,
+                    config.colaIngesta, config.minutosInstantanea, config.archivarSegmentos);
+        } catch (IOException e) {
+            System.err.println("Error al abrir el registro de evaluaciones: " + e.getMessage());
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try { registro.close(); } catch (IOException e) {}
+        }));
+
+        // Modo importación: se cargan las evaluaciones del archivo y termina
+        if (config.importar != null) {
+            importarEvaluaciones(Paths.get(config.importar));
+            return;
+        }
+
+        // Resultados en vivo solo en el modo NIO: en el modo por hilos cada suscriptor retendría un
+        // trabajador con escrituras bloqueantes, que el timeout de lectura no corta si el cliente deja de leer
+        if (config.modo.equals("nio")) difusor = new DifusorResultados(evaluaciones, config.maxSuscriptores);
+
         // Iniciamos el servidor web en un hilo separado
         new Thread(() -> {
             try {
@@ -108,85 +184,495 @@ public class EvaluacionServidor {
             return;
         }
 
-        try (// Creamos el servidor
-        ServerSocket serverSocket = new ServerSocket(PUERTO)) {
-            System.out.println("\nServidor web iniciado en http://localhost:" + PUERTO);
+        cargarRespuestasWeb(webDir.toPath());
+        respuestasEstaticas.vigilar();
 
-            // Bucle principal del servidor
+        // Modo NIO: un solo hilo con un Selector atiende todas las conexiones
+        if (config.modo.equals("nio")) {
+            new ServidorNio(config, rutas).ejecutar();
+            return;
+        }
+
+        ExecutorService ejecutor = config.crearEjecutor();
+        try (// Creamos el servidor con una cola de aceptación del tamaño configurado
+        ServerSocket serverSocket = new ServerSocket(config.puerto, config.backlog)) {
+            System.out.println("\nServidor web iniciado en http://localhost:" + config.puerto);
+
+            // Bucle principal del servidor: solo acepta conexiones y las reparte entre los trabajadores
             while (true) {
-                Socket socket = null;
+                Socket socket = serverSocket.accept();
                 try {
-                    // Esperamos una conexión
-                    socket = serverSocket.accept();
-
-                    // Leemos la solicitud del navegador
-                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                    String request = in.readLine();
-                    if (request == null) continue;
-
-                    // Preparamos la respuesta
-                    OutputStream out = socket.getOutputStream();
-
-                    // Procesamos la solicitud
-                    String ruta = request.split(" ")[1];
-                    
-                    // Decodificar la URL para manejar caracteres especiales
-                    try {
-                        ruta = URLDecoder.decode(ruta, "UTF-8");
-                    } catch (Exception e) {
-                        // Si hay error en la decodificación, usamos la ruta original
-                    }
-                    
-                    switch (ruta) {
-                        case "/":
-                            // Página principal
-                            enviarRespuesta(out, "200 OK", "text/html", HTML_INICIO + HTML_FIN);
-                            break;
-                            
-                        case "/evaluar":
-                            // Resultados de un profesor (sin parámetros)
-                            String htmlDefault = generarHtmlResultados(1);
-                            enviarRespuesta(out, "200 OK", "text/html", HTML_INICIO + htmlDefault + HTML_FIN);
-                            break;
-                            
-                        case "/style.css":
-                            // Archivo CSS
-                            servirArchivoEstatico(out, "/style.css");
-                            break;
-                            
-                        default:
-                            if (ruta.startsWith("/img/")) {
-                                // Archivos de imagen
-                                servirArchivoEstatico(out, ruta);
-                            } else if (ruta.startsWith("/evaluar")) {
-                                // Manejo de evaluación con parámetros
-                                int profesorId = 1;
-                                if (ruta.contains("profesor=")) {
-                                    String[] partes = ruta.split("profesor=");
-                                    if (partes.length > 1) {
-                                        try {
-                                            profesorId = Integer.parseInt(partes[1].trim());
-                                        } catch (NumberFormatException e) {
-                                            profesorId = 1;
-                                        }
-                                    }
-                                }
-                                String htmlResultados = generarHtmlResultados(profesorId);
-                                enviarRespuesta(out, "200 OK", "text/html", HTML_INICIO + htmlResultados + HTML_FIN);
-                            } else {
-                                // Página no encontrada
-                                enviarRespuesta(out, "404 Not Found", "text/html", "<h1>Página no encontrada</h1>");
-                            }
-                            break;
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error: " + e.getMessage());
-                } finally {
-                    if (socket != null) {
-                        try { socket.close(); } catch (IOException e) {}
-                    }
+                    ejecutor.execute(() -> atenderConexion(socket));
+                } catch (RejectedExecutionException e) {
+                    // Todos los trabajadores ocupados y la cola llena: avisamos al cliente y cerramos
+                    rechazarConexion(socket);
                 }
             }
+        } finally {
+            ejecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Método para armar de una vez todas las respuestas que no cambian y las rutas del servidor
+     */
+    static void cargarRespuestasWeb(Path carpetaWeb) throws IOException {
+        respuestasEstaticas = RespuestasEstaticas.cargar(carpetaWeb, config.umbralMapeoBytes, config.cacheControl);
+        respuestasEstaticas.registrar("/", "200 OK", "text/html",
+                EscritorRespuesta.delHilo().texto(htmlInicio).texto(HTML_FIN).aBytes());
+        respuestasEstaticas.registrar("404", "404 Not Found", "text/html",
+                "<h1>Página no encontrada</h1>".getBytes(StandardCharsets.UTF_8));
+        respuestasEstaticas.registrar("404-archivo", "404 Not Found", "text/html",
+                "<h1>Archivo no encontrado</h1>".getBytes(StandardCharsets.UTF_8));
+        rutas = crearRutas();
+    }
+
+    /**
+     * Método para atender una conexión en un hilo trabajador.
+     * La conexión se mantiene abierta (keep-alive) mientras el cliente lo pida, hasta el
+     * máximo de solicitudes configurado o hasta que pase el tiempo de inactividad.
+     */
+    private static void atenderConexion(Socket socket) {
+        OutputStream out = null;
+        try {
+            // Un cliente que no envía nada no puede retener al trabajador para siempre
+            socket.setSoTimeout(config.timeoutLecturaMs);
+
+            LectorHttp lector = new LectorHttp(socket.getInputStream());
+            out = new BufferedOutputStream(socket.getOutputStream(), 16 * 1024);
+
+            int atendidas = 0;
+            while (true) {
+                // Leemos la solicitud del navegador
+                SolicitudHttp solicitud = lector.leer();
+                if (solicitud == null) break;
+                atendidas++;
+
+                boolean mantener = solicitud.mantenerConexion() && atendidas < config.maxSolicitudesPorConexion;
+                RespuestaHttp respuesta = procesarSolicitud(solicitud, mantener);
+                respuesta.escribir(out);
+
+                // La respuesta también puede pedir cerrar la conexión (por ejemplo, un cuerpo que termina al cerrar)
+                boolean seguir = mantener && respuesta.mantener;
+
+                // Si ya llegaron más solicitudes encadenadas, juntamos las respuestas en una sola escritura
+                if (!seguir || !lector.hayDatosPendientes()) out.flush();
+                if (!seguir) break;
+
+                // Entre solicitudes esperamos como máximo el tiempo de inactividad
+                socket.setSoTimeout(config.timeoutInactividadMs);
+            }
+        } catch (SolicitudHttp.Invalida e) {
+            try {
+                respuestaError(e).escribir(out);
+                out.flush();
+            } catch (Exception ignorada) {}
+        } catch (SocketTimeoutException e) {
+            // El cliente no envió la solicitud a tiempo: simplemente cerramos
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+        } finally {
+            try { socket.close(); } catch (IOException e) {}
+        }
+    }
+
+    /**
+     * Método para registrar las rutas del servidor web con sus manejadores. Los archivos de la
+     * carpeta web que ya están cargados se registran cada uno; los que se agreguen después se
+     * buscan por su nombre cuando ninguna ruta coincide.
+     */
+    private static RegistroRutas crearRutas() {
+        RegistroRutas rutas = new RegistroRutas(
+                (solicitud, mantener) -> crearRespuesta("405 Method Not Allowed", "text/html",
+                        "<h1>Método no permitido</h1>", mantener),
+                (solicitud, mantener) -> !solicitud.metodo.equals("GET")
+                        ? crearRespuesta("405 Method Not Allowed", "text/html", "<h1>Método no permitido</h1>", mantener)
+                        : respuestaArchivo(solicitud.camino(), "404", solicitud, mantener));
+
+        // Página principal: armada al iniciar, o con búsqueda o paginación (/?q=...&page=N), que
+        // se arma y comprime en el momento (en el modo NIO, en el pool)
+        rutas.agregarAsincronaSi("GET", "/", SolicitudHttp::tieneConsulta,
+                (solicitud, mantener) -> !solicitud.tieneConsulta()
+                        ? respuestaArchivo("/", "404", solicitud, mantener)
+                        : EscritorRespuesta.delHilo()
+                                .texto(generarHtmlInicio(solicitud.parametro("q"),
+                                        Math.max(1, solicitud.parametroEntero("page", 1))))
+                                .texto(HTML_FIN).respuesta("200 OK", "text/html", Compresion.elegir(solicitud), mantener));
+
+        // Evaluaciones: se reciben con POST y los resultados de un profesor se ven con GET
+        rutas.agregar("POST", "/evaluar", EvaluacionServidor::recibirEvaluacion);
+        rutas.agregarAsincronaSi("GET", "/evaluar", solicitud -> !resultadosEnCache(solicitud),
+                EvaluacionServidor::paginaResultados);
+
+        // API en JSON
+        rutas.agregarAsincrona("GET", "/api/resultados",
+                (solicitud, mantener) -> respuestaJson(escribirJsonResultados(), mantener));
+        rutas.agregar("GET", "/api/profesores", (solicitud, mantener) -> respuestaJson(
+                escribirJsonCatalogo(solicitud.parametro("nombre"), solicitud.parametro("curso")), mantener));
+        rutas.agregar("GET", "/api/profesores/{n}/resultados", EvaluacionServidor::jsonResultadosProfesor);
+        rutas.agregar("GET", "/api/profesores/{n}/eventos",
+                (solicitud, mantener) -> respuestaEventos(solicitud.numeroRuta, mantener));
+
+        // Exportaciones: el cuerpo se genera a medida que se envía
+        rutas.agregarAsincrona("GET", "/api/exportar/evaluaciones.csv", (solicitud, mantener) -> respuestaExportacion(
+                "text/csv; charset=utf-8", "evaluaciones.csv", ExportadorEvaluaciones.evaluacionesCsv(registro), mantener));
+        rutas.agregarAsincrona("GET", "/api/exportar/evaluaciones.bin", (solicitud, mantener) -> respuestaExportacion(
+                "application/octet-stream", "evaluaciones.bin", ExportadorEvaluaciones.evaluacionesColumnar(registro), mantener));
+        rutas.agregarAsincrona("GET", "/api/exportar/resultados.csv", (solicitud, mantener) -> respuestaExportacion(
+                "text/csv; charset=utf-8", "resultados.csv",
+                ExportadorEvaluaciones.resultadosCsv(cuestionario, evaluaciones.resumenes()), mantener));
+        rutas.agregarAsincrona("GET", "/api/exportar/resultados.bin", (solicitud, mantener) -> respuestaExportacion(
+                "application/octet-stream", "resultados.bin",
+                ExportadorEvaluaciones.resultadosColumnar(cuestionario, evaluaciones.resumenes()), mantener));
+
+        // Archivos de la carpeta web; una imagen que no está responde su propio 404
+        for (String ruta : respuestasEstaticas.rutas()) {
+            if (!ruta.equals("/")) {
+                rutas.agregarExacta("GET", ruta, (solicitud, mantener) -> respuestaArchivo(ruta, "404", solicitud, mantener));
+            }
+        }
+        rutas.agregar("GET", "/img/*",
+                (solicitud, mantener) -> respuestaArchivo(solicitud.camino(), "404-archivo", solicitud, mantener));
+        return rutas;
+    }
+
+    /**
+     * Método para responder una solicitud según su ruta (en el hilo actual, también las rutas asíncronas)
+     */
+    static RespuestaHttp procesarSolicitud(SolicitudHttp solicitud, boolean mantener) throws IOException {
+        return rutas.buscar(solicitud).atender(solicitud, mantener);
+    }
+
+    /**
+     * Método para servir un archivo de la carpeta web (o la página principal), o la página de
+     * error indicada si no está
+     */
+    private static RespuestaHttp respuestaArchivo(String ruta, String siNoEsta, SolicitudHttp solicitud,
+                                                  boolean mantener) {
+        RespuestaHttp estatica = respuestasEstaticas.obtener(ruta, solicitud, mantener);
+        return estatica != null ? estatica : respuestasEstaticas.obtener(siNoEsta, mantener);
+    }
+
+    /**
+     * Método para responder GET /evaluar: resultados de un profesor (el 1 si no se indica) y,
+     * opcionalmente, del período pedido
+     */
+    private static RespuestaHttp paginaResultados(SolicitudHttp solicitud, boolean mantener) {
+        int profesorId = solicitud.parametroEntero("profesor", 1);
+        int codificacion = Compresion.elegir(solicitud);
+        int[] periodo;
+        try {
+            periodo = periodo(solicitud);
+        } catch (IllegalArgumentException e) {
+            return EscritorRespuesta.delHilo().texto(htmlInicio).texto("<div class='parte-4'><h2>")
+                    .texto(escaparHtml(e.getMessage())).texto("</h2></div>").texto(HTML_FIN)
+                    .respuesta("400 Bad Request", "text/html", codificacion, mantener);
+        }
+        if (periodo != null) {
+            // Un período arbitrario no se guarda: se suman los días que abarca
+            return EscritorRespuesta.delHilo().texto(htmlInicio).texto(generarHtmlResultados(profesorId, periodo))
+                    .texto(HTML_FIN).respuesta("200 OK", "text/html", codificacion, mantener);
+        }
+        return respuestaResultados(profesorId, codificacion, mantener);
+    }
+
+    /**
+     * Método para saber si GET /evaluar se responde con una página ya armada. Si no (período,
+     * profesor sin evaluaciones o página vieja), en el modo NIO se arma y comprime en el pool.
+     * Si la página se invalida justo después, se arma en el hilo del Selector esa única vez.
+     */
+    private static boolean resultadosEnCache(SolicitudHttp solicitud) {
+        try {
+            if (periodo(solicitud) != null) return false;
+        } catch (IllegalArgumentException e) {
+            return true; // Página de error corta
+        }
+        int profesorId = solicitud.parametroEntero("profesor", 1);
+        long version = evaluaciones.version(profesorId);
+        PaginaResultados pagina = paginasResultados.get(profesorId);
+        return version != 0 && pagina != null && pagina.version >= version;
+    }
+
+    /**
+     * Método para responder /api/profesores/{id}/resultados, opcionalmente de un período (?desde=...&hasta=...)
+     */
+    private static RespuestaHttp jsonResultadosProfesor(SolicitudHttp solicitud, boolean mantener) {
+        int profesorId = solicitud.numeroRuta;
+        try {
+            int[] periodo = periodo(solicitud);
+            AlmacenEvaluaciones.Resumen resumen = profesorId == SolicitudHttp.NO_NUMERO ? null
+                    : periodo == null ? evaluaciones.resumen(profesorId)
+                    : evaluaciones.resumen(profesorId, periodo[0], periodo[1]);
+            if (resumen != null) {
+                EscritorJson json = EscritorJson.delHilo();
+                escribirJsonProfesor(json, profesorId, resumen);
+                return respuestaJson(json, mantener);
+            }
+        } catch (IllegalArgumentException e) {
+            return respuestaJson(EscritorJson.delHilo().inicioObjeto().campo("error").valor(e.getMessage()).finObjeto(),
+                    "400 Bad Request", mantener);
+        }
+        return respuestaJson(EscritorJson.delHilo().inicioObjeto()
+                .campo("error").valor("No hay evaluaciones registradas para este profesor").finObjeto(),
+                "404 Not Found", mantener);
+    }
+
+    /**
+     * Método para recibir una evaluación enviada con POST /evaluar.
+     * El cuerpo es un formulario (application/x-www-form-urlencoded) con los campos
+     * profesor=N y respuestas=una puntuación por pregunta, separadas por comas o todas juntas
+     * ("5,4,3,..." o "543..."). La evaluación se encola para el escritor del registro y se
+     * responde 202 sin esperar el disco; si la cola está llena se responde 503 con Retry-After.
+     */
+    private static RespuestaHttp recibirEvaluacion(SolicitudHttp solicitud, boolean mantener) {
+        int profesorId;
+        byte[] puntuaciones;
+        try {
+            String profesor = null;
+            String lista = null;
+            String cuerpo = new String(solicitud.cuerpo, StandardCharsets.UTF_8);
+            for (String par : cuerpo.split("&")) {
+                int igual = par.indexOf('=');
+                if (igual < 0) continue;
+                String nombre = URLDecoder.decode(par.substring(0, igual), StandardCharsets.UTF_8);
+                String valor = URLDecoder.decode(par.substring(igual + 1), StandardCharsets.UTF_8).trim();
+                if (nombre.equals("profesor")) profesor = valor;
+                else if (nombre.equals("respuestas")) lista = valor;
+            }
+            if (profesor == null || lista == null) {
+                throw new IllegalArgumentException("Faltan los campos profesor y respuestas");
+            }
+            try {
+                profesorId = Integer.parseInt(profesor);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("El profesor debe ser un número");
+            }
+            if (catalogo.profesor(profesorId) == null) {
+                throw new IllegalArgumentException("Número de profesor no válido");
+            }
+            puntuaciones = leerPuntuaciones(lista);
+        } catch (IllegalArgumentException e) {
+            return respuestaJson(EscritorJson.delHilo().inicioObjeto().campo("error").valor(e.getMessage()).finObjeto(),
+                    "400 Bad Request", mantener);
+        }
+
+        try {
+            registro.agregar(profesorId, puntuaciones);
+        } catch (RejectedExecutionException e) {
+            byte[] cuerpo = EscritorJson.delHilo().inicioObjeto()
+                    .campo("error").valor("Servidor ocupado, intente nuevamente").finObjeto().aBytes();
+            return new RespuestaHttp(mantener,
+                    cabecera("503 Service Unavailable", "application/json; charset=utf-8", cuerpo.length,
+                            "Retry-After: 1\r\n", mantener),
+                    ByteBuffer.wrap(cuerpo));
+        }
+        return respuestaJson(EscritorJson.delHilo().inicioObjeto().campo("estado").valor("recibida").finObjeto(),
+                "202 Accepted", mantener);
+    }
+
+    /**
+     * Método para convertir las puntuaciones ("5,4,3,..." o "543...") al arreglo plano del cuestionario
+     */
+    private static byte[] leerPuntuaciones(String lista) {
+        byte[] puntuaciones = new byte[cuestionario.preguntas()];
+        int n = 0;
+        for (int i = 0; i < lista.length(); i++) {
+            char c = lista.charAt(i);
+            if (c == ',' || c == ' ') continue;
+            if (c < '1' || c > '0' + cuestionario.escala()) {
+                throw new IllegalArgumentException("Las puntuaciones deben estar entre 1 y " + cuestionario.escala());
+            }
+            if (n == puntuaciones.length) {
+                throw new IllegalArgumentException("Se esperan " + puntuaciones.length + " puntuaciones");
+            }
+            puntuaciones[n++] = (byte) (c - '0');
+        }
+        if (n != puntuaciones.length) {
+            throw new IllegalArgumentException("Se esperan " + puntuaciones.length + " puntuaciones");
+        }
+        return puntuaciones;
+    }
+
+    /**
+     * Método para leer el período pedido en la consulta: desde y hasta (AAAA-MM-DD, inclusive,
+     * cualquiera de los dos puede faltar) o ultimos=N días. Devuelve {desde, hasta} en días desde
+     * 1970-01-01 (ver AlmacenEvaluaciones.dia), o null si no se pidió un período.
+     */
+    static int[] periodo(SolicitudHttp solicitud) {
+        int hoy = AlmacenEvaluaciones.dia(System.currentTimeMillis());
+        int dias = solicitud.parametroEntero("ultimos", 0);
+        if (dias >= 1) return new int[]{hoy - dias + 1, hoy};
+        String ultimos = solicitud.parametro("ultimos");
+        if (ultimos != null && !ultimos.isBlank()) {
+            throw new IllegalArgumentException("El parámetro ultimos debe ser un número de días positivo");
+        }
+        String desde = solicitud.parametro("desde");
+        String hasta = solicitud.parametro("hasta");
+        if ((desde == null || desde.isBlank()) && (hasta == null || hasta.isBlank())) return null;
+
+        int[] periodo = {Integer.MIN_VALUE + 1, Integer.MAX_VALUE};
+        try {
+            if (desde != null && !desde.isBlank()) periodo[0] = (int) LocalDate.parse(desde.trim()).toEpochDay();
+            if (hasta != null && !hasta.isBlank()) periodo[1] = (int) LocalDate.parse(hasta.trim()).toEpochDay();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Fecha no válida (se espera AAAA-MM-DD)");
+        }
+        if (periodo[0] > periodo[1]) throw new IllegalArgumentException("La fecha desde es posterior a la fecha hasta");
+        return periodo;
+    }
+
+    /**
+     * Método para escribir en JSON el catálogo de profesores, o los que tienen ese nombre o curso
+     */
+    private static EscritorJson escribirJsonCatalogo(String nombre, String curso) {
+        List<CatalogoProfesores.Profesor> profesores = nombre != null ? catalogo.porNombre(nombre)
+                : curso != null ? catalogo.porCurso(curso) : catalogo.todos();
+        EscritorJson json = EscritorJson.delHilo();
+        json.inicioObjeto().campo("profesores").inicioArreglo();
+        for (CatalogoProfesores.Profesor p : profesores) {
+            if (curso != null && nombre != null && !CatalogoProfesores.normalizar(p.curso).equals(CatalogoProfesores.normalizar(curso))) {
+                continue;
+            }
+            json.inicioObjeto()
+                    .campo("id").valor(p.id)
+                    .campo("nombre").valor(p.nombre)
+                    .campo("curso").valor(p.curso)
+                    .campo("imagen").valor(p.imagen)
+                    .campo("evaluaciones").valor(evaluaciones.version(p.id))
+                    .finObjeto();
+        }
+        return json.finArreglo().finObjeto();
+    }
+
+    /**
+     * Método para escribir en JSON los resultados de todos los profesores con evaluaciones
+     */
+    private static EscritorJson escribirJsonResultados() {
+        EscritorJson json = EscritorJson.delHilo();
+        json.inicioObjeto().campo("profesores").inicioArreglo();
+        for (Map.Entry<Integer, AlmacenEvaluaciones.Resumen> e : evaluaciones.resumenes().entrySet()) {
+            escribirJsonProfesor(json, e.getKey(), e.getValue());
+        }
+        return json.finArreglo().finObjeto();
+    }
+
+    /**
+     * Método para escribir en JSON los resultados de un profesor (nombre y curso si está en el catálogo):
+     * {"profesor":1,"nombre":...,"curso":...,"evaluaciones":N,"categorias":[{"titulo":...,"preguntas":[{"pregunta":1,
+     * "etiqueta":...,"respuestas":N,"suma":N,"promedio":4.25,"mediana":4.00,"desviacion":0.83,
+     * "histograma":[n1,n2,n3,n4,n5]}]}]}
+     */
+    private static void escribirJsonProfesor(EscritorJson json, int profesorId, AlmacenEvaluaciones.Resumen resumen) {
+        json.inicioObjeto().campo("profesor").valor(profesorId);
+        CatalogoProfesores.Profesor profesor = catalogo.profesor(profesorId);
+        if (profesor != null) json.campo("nombre").valor(profesor.nombre).campo("curso").valor(profesor.curso);
+        json.campo("evaluaciones").valor(resumen.evaluaciones)
+                .campo("categorias").inicioArreglo();
+        int pregunta = 0;
+        for (int categoria = 0; categoria < cuestionario.categorias(); categoria++) {
+            json.inicioObjeto().campo("titulo").valor(cuestionario.titulo(categoria)).campo("preguntas").inicioArreglo();
+            for (int i = 0; i < cuestionario.preguntasEn(categoria); i++, pregunta++) {
+                json.inicioObjeto()
+                        .campo("pregunta").valor(i + 1)
+                        .campo("etiqueta").valor(cuestionario.etiqueta(pregunta))
+                        .campo("respuestas").valor(resumen.respuestas(pregunta))
+                        .campo("suma").valor(resumen.suma(pregunta))
+                        .campo("promedio").valor(resumen.promedio(pregunta))
+                        .campo("mediana").valor(resumen.mediana(pregunta))
+                        .campo("desviacion").valor(resumen.desviacion(pregunta))
+                        .campo("histograma").inicioArreglo();
+                for (int v = 1; v <= cuestionario.escala(); v++) json.valor(resumen.conteo(pregunta, v));
+                json.finArreglo().finObjeto();
+            }
+            json.finArreglo().finObjeto();
+        }
+        json.finArreglo().finObjeto();
+    }
+
+    /**
+     * Método para suscribir la conexión a los resultados en vivo de un profesor del catálogo.
+     * Si el servidor no los ofrece responde 204, que hace que EventSource no vuelva a intentar.
+     */
+    private static RespuestaHttp respuestaEventos(int profesorId, boolean mantener) {
+        if (difusor == null) {
+            return new RespuestaHttp(mantener, cabecera("204 No Content", null, -1, "", mantener));
+        }
+        if (catalogo.profesor(profesorId) == null) {
+            return respuestaJson(EscritorJson.delHilo().inicioObjeto().campo("error").valor("Profesor no encontrado").finObjeto(),
+                    "404 Not Found", mantener);
+        }
+        DifusorResultados.Suscripcion suscripcion = difusor.suscribir(profesorId);
+        if (suscripcion == null) {
+            byte[] cuerpo = EscritorJson.delHilo().inicioObjeto()
+                    .campo("error").valor("Demasiados suscriptores, intente más tarde").finObjeto().aBytes();
+            return new RespuestaHttp(mantener, cabecera("503 Service Unavailable", "application/json; charset=utf-8",
+                    cuerpo.length, "Retry-After: 5\r\n", mantener), ByteBuffer.wrap(cuerpo));
+        }
+        return new RespuestaHttp(suscripcion, cabecera("200 OK", "text/event-stream; charset=utf-8", -1,
+                "Cache-Control: no-cache\r\n", false));
+    }
+
+    private static RespuestaHttp respuestaExportacion(String tipo, String nombre, RespuestaHttp.Generador generador,
+                                                      boolean mantener) {
+        return new RespuestaHttp(mantener, generador, cabecera("200 OK", tipo, -1,
+                "Transfer-Encoding: chunked\r\nContent-Disposition: attachment; filename=\"" + nombre + "\"\r\n", mantener));
+    }
+
+    private static RespuestaHttp respuestaJson(EscritorJson json, boolean mantener) {
+        return respuestaJson(json, "200 OK", mantener);
+    }
+
+    private static RespuestaHttp respuestaJson(EscritorJson json, String estado, boolean mantener) {
+        return crearRespuesta(estado, "application/json; charset=utf-8", json.aBytes(), mantener);
+    }
+
+    /**
+     * Método para responder una solicitud mal formada (siempre cierra la conexión)
+     */
+    static RespuestaHttp respuestaError(SolicitudHttp.Invalida e) {
+        return crearRespuesta(e.estado, "text/html", "<h1>Solicitud no válida</h1>", false);
+    }
+
+    /**
+     * Método para responder 503 cuando no hay capacidad para atender otra conexión
+     */
+    private static void rechazarConexion(Socket socket) {
+        try {
+            socket.setSoTimeout(1000);
+            crearRespuesta("503 Service Unavailable", "text/html",
+                    "<h1>Servidor ocupado, intente nuevamente</h1>", false).escribir(socket.getOutputStream());
+        } catch (IOException e) {
+            // El cliente ya no está: nada que hacer
+        } finally {
+            try { socket.close(); } catch (IOException e) {}
+        }
+    }
+
+    /**
+     * Método para importar un archivo CSV de evaluaciones históricas (ver ImportadorEvaluaciones)
+     */
+    private static void importarEvaluaciones(Path archivo) {
+        long inicio = System.nanoTime();
+        try {
+            ImportadorEvaluaciones.Parcial resultado = ImportadorEvaluaciones.analizar(archivo, cuestionario, catalogo);
+            long analisis = System.nanoTime();
+            registro.importar(resultado.contadores).join();
+            System.out.printf("Se importaron %d evaluaciones de %d profesores en %d ms (análisis %d ms)%n",
+                    resultado.filas, resultado.contadores.keySet().stream().mapToInt(AlmacenEvaluaciones::profesorDe).distinct().count(),
+                    (System.nanoTime() - inicio) / 1_000_000, (analisis - inicio) / 1_000_000);
+            if (resultado.rechazadas > 0) {
+                System.out.println("Se descartaron " + resultado.rechazadas + " líneas no válidas (la primera en el byte "
+                        + resultado.primeraRechazada + ")");
+            }
+            if (resultado.desconocidas > 0) {
+                System.out.println("Se descartaron " + resultado.desconocidas + " evaluaciones de profesores que no están en el catálogo");
+            }
+        } catch (IOException e) {
+            System.err.println("Error al leer " + archivo + ": " + e.getMessage());
+        } catch (CompletionException e) {
+            System.err.println("No se pudo guardar la importación: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -210,7 +696,7 @@ public class EvaluacionServidor {
             if (opcion.equals("3")) {
                 break;
             } else if (opcion.equals("2")) {
-                System.out.println("\nAbra su navegador en: http://localhost:" + PUERTO);
+                System.out.println("\nAbra su navegador en: http://localhost:" + config.puerto);
                 continue;
             } else if (!opcion.equals("1")) {
                 System.out.println("Opción no válida. Intente nuevamente.");
@@ -218,16 +704,12 @@ public class EvaluacionServidor {
             }
 
             // Selección de profesor
-            System.out.println("\nPROFESORES DISPONIBLES:");
-            System.out.println("1. Jaime Zapata - Metodologías Ágiles");
-            System.out.println("2. Jaime Zapata - Lógica de Programación");
-            System.out.println("3. Luis Zapata - Introducción a la programación");
-            System.out.print("Seleccione un profesor (1-3): ");
+            System.out.print(menuProfesores);
 
             int profesorId;
             try {
                 profesorId = Integer.parseInt(scanner.nextLine());
-                if (profesorId < 1 || profesorId > 3) {
+                if (catalogo.profesor(profesorId) == null) {
                     System.out.println("Número de profesor no válido.");
                     continue;
                 }
@@ -237,14 +719,21 @@ public class EvaluacionServidor {
             }
 
             // Evaluamos cada categoría
-            int[] metodologia = evaluarMetodologia(scanner);
-            int[] comunicacion = evaluarComunicacion(scanner);
-            int[] evaluacion = evaluarEvaluacion(scanner);
-            int[] actitudes = evaluarActitudes(scanner);
-            int[] valoracion = evaluarValoracionGeneral(scanner);
+            byte[] puntuaciones = new byte[cuestionario.preguntas()];
+            for (int categoria = 0; categoria < cuestionario.categorias(); categoria++) {
+                evaluarCategoria(scanner, categoria, puntuaciones);
+            }
 
-            // Almacenamos las respuestas
-            evaluaciones.put(profesorId, new int[][]{metodologia, comunicacion, evaluacion, actitudes, valoracion});
+            // Guardamos las respuestas en disco y las sumamos a los resultados del profesor
+            try {
+                registro.agregar(profesorId, puntuaciones).join();
+            } catch (CompletionException e) {
+                System.out.println("\nNo se pudo guardar la evaluación: " + e.getCause().getMessage());
+                continue;
+            } catch (RejectedExecutionException e) {
+                System.out.println("\nNo se pudo guardar la evaluación: " + e.getMessage());
+                continue;
+            }
 
             System.out.println("\n¡Evaluación completada con éxito!");
         }
@@ -252,251 +741,288 @@ public class EvaluacionServidor {
         scanner.close();
     }
 
-    // Métodos para evaluar cada categoría (similares para todas las categorías)
-    private static int[] evaluarMetodologia(Scanner scanner) {
-        System.out.println("\n=== METODOLOGÍA Y ESTRATEGIAS DE ENSEÑANZA ===");
-        int[] respuestas = new int[5];
-
-        System.out.println("\n1. El docente presenta los contenidos de manera clara y estructurada.");
-        respuestas[0] = obtenerRespuesta(scanner);
-
-        System.out.println("\n2. Utiliza recursos didácticos adecuados (presentaciones, videos, prácticas, etc.).");
-        respuestas[1] = obtenerRespuesta(scanner);
-
-        System.out.println("\n3. Promueve la participación activa de los estudiantes durante la clase.");
-        respuestas[2] = obtenerRespuesta(scanner);
-
-        System.out.println("\n4. Relaciona los contenidos con aplicaciones reales o del entorno técnico.");
-        respuestas[3] = obtenerRespuesta(scanner);
+    /**
+     * Método para hacer las preguntas de una categoría y guardar las puntuaciones en su
+     * tramo del arreglo plano
+     */
+    private static void evaluarCategoria(Scanner scanner, int categoria, byte[] puntuaciones) {
+        System.out.println("\n=== " + cuestionario.titulo(categoria).toUpperCase() + " ===");
+        int primera = cuestionario.primeraPregunta(categoria);
 
-        System.out.println("\n5. Estimula el pensamiento crítico y la resolución de problemas.");
-        respuestas[4] = obtenerRespuesta(scanner);
+        for (int i = 0; i < cuestionario.preguntasEn(categoria); i++) {
+            System.out.println("\n" + (i + 1) + ". " + cuestionario.texto(primera + i));
+            puntuaciones[primera + i] = (byte) obtenerRespuesta(scanner);
+        }
 
         // Solicitamos comentario pero no lo guardamos (según requisito)
-        System.out.print("\nComentario opcional (no se guardará): ");
-        scanner.nextLine();
-
-        return respuestas;
+        if (cuestionario.pideComentario(categoria)) {
+            System.out.print("\nComentario opcional (no se guardará): ");
+            scanner.nextLine();
+        }
     }
 
-    private static int[] evaluarComunicacion(Scanner scanner) {
-        System.out.println("\n=== COMUNICACIÓN Y RELACIÓN CON EL ESTUDIANTE ===");
-        int[] respuestas = new int[3];
-
-        System.out.println("\n1. Se comunica de manera respetuosa y profesional.");
-        respuestas[0] = obtenerRespuesta(scanner);
-
-        System.out.println("\n2. Escucha y responde adecuadamente a las preguntas de los estudiantes.");
-        respuestas[1] = obtenerRespuesta(scanner);
-
-        System.out.println("\n3. Está disponible para atender consultas fuera del horario de clase.");
-        respuestas[2] = obtenerRespuesta(scanner);
-
-        // Solicitamos comentario pero no lo guardamos
-        System.out.print("\nComentario opcional (no se guardará): ");
-        scanner.nextLine();
-
-        return respuestas;
+    /**
+     * Método auxiliar para obtener una respuesta válida (1 a la escala del cuestionario)
+     */
+    private static int obtenerRespuesta(Scanner scanner) {
+        int escala = cuestionario.escala();
+        while (true) {
+            System.out.print("Ingrese puntuación (1-" + escala + "): ");
+            try {
+                int respuesta = Integer.parseInt(scanner.nextLine());
+                if (respuesta >= 1 && respuesta <= escala) {
+                    return respuesta;
+                }
+                System.out.println("Error: Debe ser entre 1 y " + escala);
+            } catch (NumberFormatException e) {
+                System.out.println("Error: Ingrese un número válido");
+            }
+        }
     }
 
-    private static int[] evaluarEvaluacion(Scanner scanner) {
-        System.out.println("\n=== EVALUACIÓN Y RETROALIMENTACIÓN ===");
-        int[] respuestas = new int[3];
-
-        System.out.println("\n1. Informa claramente los criterios de evaluación.");
-        respuestas[0] = obtenerRespuesta(scanner);
-
-        System.out.println("\n2. Las evaluaciones están relacionadas con los contenidos enseñados.");
-        respuestas[1] = obtenerRespuesta(scanner);
-
-        System.out.println("\n3. Entrega retroalimentación oportuna sobre el desempeño académico.");
-        respuestas[2] = obtenerRespuesta(scanner);
-
-        return respuestas;
+    /**
+     * Método para crear una respuesta HTTP.
+     * Content-Length se calcula sobre los bytes UTF-8: con conexiones reutilizadas un largo
+     * incorrecto haría que el navegador mezcle esta respuesta con la siguiente.
+     */
+    static RespuestaHttp crearRespuesta(String estado, String tipo, String contenido, boolean mantener) {
+        return EscritorRespuesta.delHilo().texto(contenido).respuesta(estado, tipo, mantener);
     }
 
-    private static int[] evaluarActitudes(Scanner scanner) {
-        System.out.println("\n=== ACTITUDES Y PROFESIONALISMO ===");
-        int[] respuestas = new int[3];
-
-        System.out.println("\n1. Muestra compromiso con el proceso educativo.");
-        respuestas[0] = obtenerRespuesta(scanner);
+    static RespuestaHttp crearRespuesta(String estado, String tipo, byte[] cuerpo, boolean mantener) {
+        return new RespuestaHttp(mantener, cabecera(estado, tipo, cuerpo.length, mantener), ByteBuffer.wrap(cuerpo));
+    }
 
-        System.out.println("\n2. Demuestra dominio del tema o materia que imparte.");
-        respuestas[1] = obtenerRespuesta(scanner);
+    /**
+     * Método para crear una respuesta comprimida en el momento con la codificación elegida
+     * (para contenido que no se guarda en caché)
+     */
+    static RespuestaHttp crearRespuesta(String estado, String tipo, String contenido, int codificacion, boolean mantener) {
+        return EscritorRespuesta.delHilo().texto(contenido).respuesta(estado, tipo, codificacion, mantener);
+    }
 
-        System.out.println("\n3. Es puntual y cumple con los horarios establecidos.");
-        respuestas[2] = obtenerRespuesta(scanner);
+    /**
+     * Método para armar de una vez todas las variantes de una respuesta: sin comprimir, gzip y
+     * deflate, cada una con y sin keep-alive. Se eligen con variante(). Si el contenido no se
+     * achica al comprimirlo, las variantes comprimidas son la misma respuesta sin comprimir.
+     */
+    static RespuestaHttp[] crearVariantes(String estado, String tipo, byte[] cuerpo, String extras) {
+        RespuestaHttp[] variantes = new RespuestaHttp[6];
+        byte[][] comprimidos = cuerpo.length >= Compresion.MINIMO && Compresion.esComprimible(tipo)
+                ? Compresion.comprimir(cuerpo, 0, cuerpo.length) : null;
+        if (comprimidos != null) extras += "Vary: Accept-Encoding\r\n";
+        for (int codificacion = Compresion.IDENTIDAD; codificacion <= Compresion.DEFLATE; codificacion++) {
+            for (int i = 0; i < 2; i++) {
+                boolean mantener = i == 0;
+                if (codificacion == Compresion.IDENTIDAD || comprimidos == null) {
+                    variantes[codificacion * 2 + i] = new RespuestaHttp(mantener,
+                            cabecera(estado, tipo, cuerpo.length, extras, mantener), ByteBuffer.wrap(cuerpo));
+                } else {
+                    byte[] comprimido = comprimidos[codificacion - 1];
+                    variantes[codificacion * 2 + i] = new RespuestaHttp(mantener, cabecera(estado, tipo, comprimido.length,
+                            extras + "Content-Encoding: " + Compresion.NOMBRES[codificacion] + "\r\n", mantener),
+                            ByteBuffer.wrap(comprimido));
+                }
+            }
+        }
+        return variantes;
+    }
 
-        return respuestas;
+    static RespuestaHttp variante(RespuestaHttp[] variantes, int codificacion, boolean mantener) {
+        return variantes[codificacion * 2 + (mantener ? 0 : 1)];
     }
 
-    private static int[] evaluarValoracionGeneral(Scanner scanner) {
-        System.out.println("\n=== VALORACIÓN GENERAL ===");
-        int[] respuestas = new int[1];
+    /**
+     * Método para codificar la línea de estado y las cabeceras de una respuesta
+     */
+    static ByteBuffer cabecera(String estado, String tipo, long largo, boolean mantener) {
+        return cabecera(estado, tipo, largo, "", mantener);
+    }
 
-        System.out.println("\n1. En general, estoy satisfecho/a con el desempeño del docente.");
-        respuestas[0] = obtenerRespuesta(scanner);
+    /**
+     * Igual que la anterior con cabeceras adicionales ya formateadas ("Nombre: valor\r\n...").
+     * Con tipo null y largo negativo se omiten Content-Type y Content-Length (respuestas 304).
+     */
+    static ByteBuffer cabecera(String estado, String tipo, long largo, String extras, boolean mantener) {
+        return EscritorRespuesta.cabecera(estado, tipo, largo, extras, mantener);
+    }
 
-        // Solicitamos comentario pero no lo guardamos
-        System.out.print("\nComentario opcional (no se guardará): ");
-        scanner.nextLine();
+    /**
+     * Método para obtener la página de resultados de un profesor.
+     * Los datos solo cambian cuando llega una evaluación, así que la respuesta codificada (y
+     * comprimida) se guarda junto con la versión del profesor en el almacén y se reutiliza
+     * mientras esa versión no cambie: en el caso habitual no se genera HTML ni se comprime nada.
+     */
+    private static RespuestaHttp respuestaResultados(int profesorId, int codificacion, boolean mantener) {
+        long version = evaluaciones.version(profesorId);
+        if (version == 0) {
+            // Sin evaluaciones (o id inexistente): no se guarda, así ids arbitrarios no llenan la caché
+            return EscritorRespuesta.delHilo().texto(htmlInicio).texto(generarHtmlResultados(profesorId)).texto(HTML_FIN)
+                    .respuesta("200 OK", "text/html", codificacion, mantener);
+        }
 
-        return respuestas;
+        PaginaResultados pagina = paginasResultados.get(profesorId);
+        if (pagina == null || pagina.version < version) {
+            // La versión se lee antes de generar: si entra otra evaluación mientras tanto, la
+            // página puede incluirla pero queda marcada como más vieja y se regenera en la próxima lectura
+            byte[] cuerpo = EscritorRespuesta.delHilo().texto(htmlInicio).texto(generarHtmlResultados(profesorId))
+                    .texto(HTML_FIN).aBytes();
+            pagina = new PaginaResultados(version, crearVariantes("200 OK", "text/html", cuerpo, ""));
+            paginasResultados.merge(profesorId, pagina, (actual, nueva) -> actual.version >= nueva.version ? actual : nueva);
+        }
+        return variante(pagina.variantes, codificacion, mantener);
     }
 
     /**
-     * Método auxiliar para obtener una respuesta válida (1-5)
+     * Método para generar la parte inicial de las páginas con una página del catálogo.
+     * La búsqueda usa el índice del catálogo y solo se recorren los profesores que se muestran.
      */
-    private static int obtenerRespuesta(Scanner scanner) {
-        while (true) {
-            System.out.print("Ingrese puntuación (1-5): ");
-            try {
-                int respuesta = Integer.parseInt(scanner.nextLine());
-                if (respuesta >= 1 && respuesta <= 5) {
-                    return respuesta;
-                }
-                System.out.println("Error: Debe ser entre 1 y 5");
-            } catch (NumberFormatException e) {
-                System.out.println("Error: Ingrese un número válido");
-            }
+    private static String generarHtmlInicio(String consulta, int pagina) {
+        if (consulta == null) consulta = "";
+        int[] coincidencias = catalogo.buscar(consulta); // null: sin búsqueda, todos
+        int total = coincidencias == null ? catalogo.tamano() : coincidencias.length;
+        int porPagina = config.profesoresPorPagina;
+        int paginas = Math.max(1, (total + porPagina - 1) / porPagina);
+        pagina = Math.min(pagina, paginas);
+        int desde = (pagina - 1) * porPagina;
+        int hasta = Math.min(total, desde + porPagina);
+
+        StringBuilder html = new StringBuilder(HTML_INICIO.length() + 1024 + porPagina * (HTML_TARJETA_PROFESOR.length() + 64));
+        html.append(HTML_INICIO);
+        html.append(String.format(HTML_BUSCADOR, escaparHtml(consulta)));
+        List<CatalogoProfesores.Profesor> todos = catalogo.todos();
+        for (int i = desde; i < hasta; i++) {
+            CatalogoProfesores.Profesor p = todos.get(coincidencias == null ? i : coincidencias[i]);
+            html.append(String.format(HTML_TARJETA_PROFESOR,
+                    escaparHtml(p.imagen), p.id, escaparHtml(p.nombre), escaparHtml(p.curso), p.id));
+        }
+        if (total == 0) {
+            html.append("            <p class=\"sin-resultados\">No se encontraron profesores</p>\n");
         }
+
+        // Enlaces a la página anterior y a la siguiente, conservando la búsqueda
+        String enlace = "/?" + (consulta.isEmpty() ? "" : "q=" + escaparHtml(URLEncoder.encode(consulta, StandardCharsets.UTF_8)) + "&amp;") + "page=";
+        StringBuilder paginacion = new StringBuilder();
+        if (pagina > 1) paginacion.append("<a href=\"").append(enlace).append(pagina - 1).append("\">&laquo; Anterior</a> ");
+        paginacion.append("<span>Página ").append(pagina).append(" de ").append(paginas)
+                .append(" (").append(total).append(total == 1 ? " profesor)" : " profesores)").append("</span>");
+        if (pagina < paginas) paginacion.append(" <a href=\"").append(enlace).append(pagina + 1).append("\">Siguiente &raquo;</a>");
+        html.append(String.format(HTML_DESPUES_TARJETAS, paginacion));
+        return html.toString();
     }
 
     /**
-     * Método para enviar una respuesta HTTP
+     * Método para generar la lista de profesores del menú de la consola
      */
-    private static void enviarRespuesta(OutputStream out, String estado, String tipo, String contenido) throws IOException {
-        String respuesta = "HTTP/1.1 " + estado + "\r\n" +
-                "Content-Type: " + tipo + "\r\n" +
-                "Content-Length: " + contenido.length() + "\r\n" +
-                "\r\n" + contenido;
-        out.write(respuesta.getBytes());
+    private static String generarMenuProfesores() {
+        StringBuilder menu = new StringBuilder("\nPROFESORES DISPONIBLES:\n");
+        for (CatalogoProfesores.Profesor p : catalogo.todos()) {
+            menu.append(p.id).append(". ").append(p.nombre).append(" - ").append(p.curso).append('\n');
+        }
+        menu.append("Seleccione un profesor (número): ");
+        return menu.toString();
     }
 
     /**
-     * Método para servir archivos estáticos (CSS, imágenes)
+     * Método para escapar texto (del catálogo, del cuestionario o de la solicitud) antes de
+     * ponerlo en el HTML, también dentro de atributos con comillas simples o dobles
      */
-    private static void servirArchivoEstatico(OutputStream out, String rutaArchivo) throws IOException {
-        File archivo = new File(CARPETA_WEB + rutaArchivo);
-        if (!archivo.exists()) {
-            enviarRespuesta(out, "404 Not Found", "text/html", "<h1>Archivo no encontrado</h1>");
-            return;
+    static String escaparHtml(String texto) {
+        StringBuilder escapado = null;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            String reemplazo = c == '<' ? "&lt;" : c == '>' ? "&gt;" : c == '&' ? "&amp;" : c == '"' ? "&quot;"
+                    : c == '\'' ? "&#39;" : null;
+            if (reemplazo != null && escapado == null) escapado = new StringBuilder(texto.substring(0, i));
+            if (escapado != null) {
+                if (reemplazo != null) escapado.append(reemplazo);
+                else escapado.append(c);
+            }
         }
-
-        // Determinamos el tipo de contenido
-        String tipo = "application/octet-stream";
-        if (rutaArchivo.endsWith(".css")) tipo = "text/css";
-        else if (rutaArchivo.endsWith(".svg")) tipo = "image/svg+xml";
-        else if (rutaArchivo.endsWith(".jfif") || rutaArchivo.endsWith(".jpg")) tipo = "image/jpeg";
-        else if (rutaArchivo.endsWith(".png")) tipo = "image/png";
-
-        // Enviamos el archivo
-        String cabecera = "HTTP/1.1 200 OK\r\n" +
-                "Content-Type: " + tipo + "\r\n" +
-                "Content-Length: " + archivo.length() + "\r\n" +
-                "\r\n";
-        out.write(cabecera.getBytes());
-        Files.copy(archivo.toPath(), out);
+        return escapado == null ? texto : escapado.toString();
     }
 
     /**
      * Método para generar el HTML con los resultados de un profesor
      */
     private static String generarHtmlResultados(int profesorId) {
+        return generarHtmlResultados(profesorId, null);
+    }
+
+    /**
+     * Método para generar los resultados de un profesor en un período ({desde, hasta} en días,
+     * ver periodo(String)), o de todas sus evaluaciones si periodo es null
+     */
+    private static String generarHtmlResultados(int profesorId, int[] periodo) {
         // Verificamos si hay evaluaciones para este profesor
-        if (!evaluaciones.containsKey(profesorId)) {
+        AlmacenEvaluaciones.Resumen resultados = periodo == null ? evaluaciones.resumen(profesorId)
+                : evaluaciones.resumen(profesorId, periodo[0], periodo[1]);
+        if (resultados == null && (periodo == null || catalogo.profesor(profesorId) == null)) {
             return "<div class='parte-4'><h2>No hay evaluaciones registradas para este profesor</h2></div>";
         }
 
-        int[][] resultados = evaluaciones.get(profesorId);
-
-        // Datos de los profesores
-        String[] nombres = {"Jaime Zapata", "Jaime Zapata", "Luis Zapata"};
-        String[] cursos = {"Metodologías Ágiles", "Lógica de Programación", "Introducción a la programación"};
-        String[] imagenes = {"/img/profesor.jpg", "/img/profesor.jpg", "/img/profesor.jpg"};
+        // Datos del profesor
+        CatalogoProfesores.Profesor profesor = catalogo.profesor(profesorId);
+        if (profesor == null) {
+            return "<div class='parte-4'><h2>Profesor no encontrado</h2></div>";
+        }
 
         // Generamos el HTML
         StringBuilder html = new StringBuilder();
         html.append("<div class=\"parte-4\">");
+        html.append(formularioPeriodo(profesorId, periodo));
+        if (resultados == null) {
+            html.append("<h2>No hay evaluaciones registradas para este profesor en ese período</h2></div>");
+            return html.toString();
+        }
 
-        // Tarjeta para Metodología
-        html.append(crearTarjetaResultados(
-                "Metodología y Estrategias de Enseñanza",
-                nombres[profesorId-1],
-                cursos[profesorId-1],
-                imagenes[profesorId-1],
-                resultados[0],
-                new String[]{
-                        "Claridad en contenidos",
-                        "Recursos didácticos",
-                        "Participación activa",
-                        "Aplicaciones reales",
-                        "Pensamiento crítico"
-                }
-        ));
-
-        // Tarjeta para Comunicación
-        html.append(crearTarjetaResultados(
-                "Comunicación y Relación con el Estudiante",
-                nombres[profesorId-1],
-                cursos[profesorId-1],
-                imagenes[profesorId-1],
-                resultados[1],
-                new String[]{
-                        "Comunicación respetuosa",
-                        "Respuesta a preguntas",
-                        "Disponibilidad"
-                }
-        ));
-
-        // Tarjeta para Evaluación
-        html.append(crearTarjetaResultados(
-                "Evaluación y Retroalimentación",
-                nombres[profesorId-1],
-                cursos[profesorId-1],
-                imagenes[profesorId-1],
-                resultados[2],
-                new String[]{
-                        "Criterios de evaluación",
-                        "Relación con contenidos",
-                        "Retroalimentación oportuna"
-                }
-        ));
-
-        // Tarjeta para Actitudes
-        html.append(crearTarjetaResultados(
-                "Actitudes y Profesionalismo",
-                nombres[profesorId-1],
-                cursos[profesorId-1],
-                imagenes[profesorId-1],
-                resultados[3],
-                new String[]{
-                        "Compromiso educativo",
-                        "Dominio del tema",
-                        "Puntualidad"
-                }
-        ));
-
-        // Tarjeta para Valoración General
-        html.append(crearTarjetaResultados(
-                "Valoración General",
-                nombres[profesorId-1],
-                cursos[profesorId-1],
-                imagenes[profesorId-1],
-                resultados[4],
-                new String[]{"Satisfacción general"}
-        ));
+        // Una tarjeta por categoría
+        for (int categoria = 0; categoria < cuestionario.categorias(); categoria++) {
+            html.append(crearTarjetaResultados(
+                    escaparHtml(cuestionario.titulo(categoria)),
+                    escaparHtml(profesor.nombre),
+                    escaparHtml(profesor.curso),
+                    escaparHtml(profesor.imagen),
+                    resultados,
+                    categoria
+            ));
+        }
 
+        // Sin período, la página se actualiza sola con los resultados en vivo (si el servidor los ofrece)
+        if (periodo == null && difusor != null) {
+            html.append("<script src=\"/resultados-en-vivo.js\" data-profesor=\"").append(profesorId).append("\"></script>");
+        }
         html.append("</div>");
         return html.toString();
     }
 
     /**
-     * Método auxiliar para crear una tarjeta de resultados
+     * Método auxiliar para crear el formulario que elige el período de los resultados
+     */
+    private static String formularioPeriodo(int profesorId, int[] periodo) {
+        String desde = periodo == null || periodo[0] == Integer.MIN_VALUE + 1 ? "" : LocalDate.ofEpochDay(periodo[0]).toString();
+        String hasta = periodo == null || periodo[1] == Integer.MAX_VALUE ? "" : LocalDate.ofEpochDay(periodo[1]).toString();
+        return "<form class=\"periodo\" action=\"/evaluar\" method=\"get\">"
+                + "<input type=\"hidden\" name=\"profesor\" value=\"" + profesorId + "\">"
+                + "<label>Desde <input type=\"date\" name=\"desde\" value=\"" + desde + "\"></label>"
+                + "<label>Hasta <input type=\"date\" name=\"hasta\" value=\"" + hasta + "\"></label>"
+                + "<button type=\"submit\">Ver período</button>"
+                + "<a href=\"/evaluar?profesor=" + profesorId + "&amp;ultimos=30\">Últimos 30 días</a>"
+                + "<a href=\"/evaluar?profesor=" + profesorId + "&amp;ultimos=180\">Últimos 180 días</a>"
+                + "<a href=\"/evaluar?profesor=" + profesorId + "\">Todo</a>"
+                + "</form>";
+    }
+
+    /**
+     * Método auxiliar para crear una tarjeta de resultados: gráfica con el promedio de cada
+     * pregunta y tabla con sus estadísticas y la distribución de las respuestas. El título y los
+     * datos del profesor llegan ya escapados; las etiquetas de las preguntas se escapan aquí.
      */
     private static String crearTarjetaResultados(String titulo, String profesor, String curso,
-                                                 String imagen, int[] datos, String[] etiquetas) {
+                                                 String imagen, AlmacenEvaluaciones.Resumen resultados, int categoria) {
+        double[] datos = resultados.promedios(categoria);
+        String[] etiquetas = cuestionario.etiquetasDe(categoria);
+        int primera = cuestionario.primeraPregunta(categoria);
         StringBuilder html = new StringBuilder();
         html.append("<div class=\"card-h\">")
                 .append("<div class=\"card-title\"><h2>").append(titulo).append("</h2></div>")
@@ -508,13 +1034,34 @@ public class EvaluacionServidor {
                 .append("<caption>Resultados de Evaluación</caption><tbody>");
 
         for (int i = 0; i < datos.length; i++) {
-            html.append("<tr><th scope=\"row\" title=\"").append(etiquetas[i]).append("\">")
+            String promedio = String.format(Locale.ROOT, "%.1f", datos[i]);
+            html.append("<tr><th scope=\"row\" title=\"").append(escaparHtml(etiquetas[i])).append("\">")
                     .append(i+1).append("</th>")
-                    .append("<td style=\"--size: calc(").append(datos[i]).append(" / 5); --color: #EE2B7B\">")
-                    .append("<span class=\"data-label\">").append(datos[i]).append("</span></td></tr>");
+                    .append("<td data-pregunta=\"").append(primera + i + 1).append("\" style=\"--size: calc(").append(promedio).append(" / ").append(cuestionario.escala())
+                    .append("); --color: #EE2B7B\">")
+                    .append("<span class=\"data-label\">").append(promedio).append("</span></td></tr>");
         }
 
-        html.append("</tbody></table></div></div></div>");
+        html.append("</tbody></table></div></div>");
+
+        // Estadísticas por pregunta
+        html.append("<table class=\"card-estadisticas\"><thead><tr><th>Pregunta</th><th>Respuestas</th>")
+                .append("<th>Promedio</th><th>Mediana</th><th>Desv. estándar</th>");
+        for (int v = 1; v <= cuestionario.escala(); v++) html.append("<th>").append(v).append("</th>");
+        html.append("</tr></thead><tbody>");
+        for (int i = 0; i < datos.length; i++) {
+            int pregunta = primera + i;
+            html.append("<tr data-pregunta=\"").append(pregunta + 1).append("\"><th scope=\"row\">").append(i + 1).append(". ").append(escaparHtml(etiquetas[i])).append("</th>")
+                    .append("<td>").append(resultados.respuestas(pregunta)).append("</td>")
+                    .append("<td>").append(String.format(Locale.ROOT, "%.2f", datos[i])).append("</td>")
+                    .append("<td>").append(String.format(Locale.ROOT, "%.1f", resultados.mediana(pregunta))).append("</td>")
+                    .append("<td>").append(String.format(Locale.ROOT, "%.2f", resultados.desviacion(pregunta))).append("</td>");
+            for (int v = 1; v <= cuestionario.escala(); v++) {
+                html.append("<td>").append(resultados.conteo(pregunta, v)).append("</td>");
+            }
+            html.append("</tr>");
+        }
+        html.append("</tbody></table></div>");
         return html.toString();
     }
 }
\ No newline at end of file
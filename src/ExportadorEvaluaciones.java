@@ -0,0 +1,346 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Exportación de las evaluaciones individuales y de los resultados por pregunta, en CSV o
+ * en un formato binario por columnas. Cada exportación es un Generador: produce el cuerpo
+ * de a bloques a medida que se envía, así nunca está todo en memoria.
+ *
+ * Evaluaciones (de los segmentos del registro, archivados y activos):
+ *   CSV: profesor,fecha,p1,...,pN (el mismo formato que acepta la importación)
+ *   Binario: "EVC1" | versión (short) | preguntas (short) | bloques hasta uno con 0 filas
+ *     bloque: filas (int) | profesor int[filas] | fecha long[filas] (ms) | por pregunta byte[filas]
+ *
+ * Resultados (de los contadores del almacén, incluye lo importado):
+ *   CSV: profesor,categoria,pregunta,evaluaciones,respuestas,suma,promedio,mediana,desviacion,n1,...,nE
+ *     (promedio, mediana y desviación con dos decimales; una columna n por valor de la escala E)
+ *   Binario: "EVA1" | versión (short) | preguntas (short) | escala (int) | profesores (int)
+ *     | profesor int[n] | evaluaciones long[n] | por celda del histograma long[n]
+ */
+final class ExportadorEvaluaciones {
+    private static final int MAGICO_EVALUACIONES = 0x45564331; // "EVC1"
+    private static final int MAGICO_RESULTADOS = 0x45564131;   // "EVA1"
+    private static final short VERSION = 1;
+    private static final int FILAS_POR_BLOQUE = 4096;
+    private static final int TAMANO_BLOQUE_CSV = 64 * 1024; // Salvo que una fila (o un profesor) no quepa
+    private static final int MAX_ENTERO = 20;               // Largo de un long en decimal, con signo
+    private static final int LARGO_FECHA = 20;              // 2024-03-15T10:20:30Z
+
+    private ExportadorEvaluaciones() {}
+
+    /**
+     * Generador que arma el cuerpo en bloques completos y los entrega de a pedazos
+     */
+    private abstract static class PorBloques implements RespuestaHttp.Generador {
+        private final ByteBuffer bloque;
+        private boolean ultimo;
+
+        PorBloques(int capacidad) {
+            bloque = ByteBuffer.allocate(capacidad).limit(0);
+        }
+
+        /** Escribe el siguiente bloque; devuelve false si es el último */
+        abstract boolean siguienteBloque(ByteBuffer bloque) throws IOException;
+
+        @Override
+        public boolean llenar(ByteBuffer destino) throws IOException {
+            while (destino.hasRemaining()) {
+                if (!bloque.hasRemaining()) {
+                    if (ultimo) return false;
+                    bloque.clear();
+                    ultimo = !siguienteBloque(bloque);
+                    bloque.flip();
+                    continue;
+                }
+                int n = Math.min(destino.remaining(), bloque.remaining());
+                destino.put(destino.position(), bloque, bloque.position(), n).position(destino.position() + n);
+                bloque.position(bloque.position() + n);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Recorre los registros válidos de una lista de segmentos, uno a la vez. Los segmentos de un
+     * cuestionario con otras preguntas o escala (archivados antes de cambiarlo) se omiten.
+     */
+    private static final class LectorSegmentos {
+        private final RegistroEvaluaciones registro;
+        private final int tamanoRegistro;
+        private final Iterator<Path> rutas;
+        private final CRC32 crc = new CRC32();
+        private MappedByteBuffer datos;
+        private int pos;
+        private int fin;
+
+        LectorSegmentos(RegistroEvaluaciones registro) throws IOException {
+            this.registro = registro;
+            this.tamanoRegistro = registro.tamanoRegistro;
+            this.rutas = registro.segmentos().iterator();
+        }
+
+        /** Avanza al siguiente registro; false si no quedan */
+        boolean siguiente() throws IOException {
+            while (true) {
+                if (datos != null) {
+                    // Los registros dañados (o a medio escribir en el activo) se saltean, como al reproducir
+                    for (pos += tamanoRegistro; pos + tamanoRegistro <= fin; pos += tamanoRegistro) {
+                        if (valido()) return true;
+                    }
+                    datos = null; // Fin del segmento
+                }
+                if (!rutas.hasNext()) return false;
+                Path ruta = rutas.next();
+                try (FileChannel canal = registro.abrirSegmento(ruta)) {
+                    long tamano = canal.size();
+                    if (tamano < RegistroEvaluaciones.TAMANO_CABECERA) continue;
+                    datos = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamano);
+                }
+                if (!registro.cabeceraCompatible(datos)) {
+                    System.err.println("Exportación: se omite " + ruta.getFileName()
+                            + ", es de otro formato o de un cuestionario con otras preguntas o escala");
+                    datos = null;
+                    continue;
+                }
+                fin = datos.limit();
+                pos = RegistroEvaluaciones.TAMANO_CABECERA - tamanoRegistro;
+            }
+        }
+
+        private boolean valido() {
+            return registro.registroValido(datos, pos, crc);
+        }
+
+        int profesor() { return datos.getInt(pos); }
+        long fecha() { return datos.getLong(pos + 4); }
+        byte puntuacion(int pregunta) { return datos.get(pos + 12 + pregunta); }
+    }
+
+    /**
+     * Método para exportar las evaluaciones individuales en CSV
+     */
+    static RespuestaHttp.Generador evaluacionesCsv(RegistroEvaluaciones registro) throws IOException {
+        LectorSegmentos lector = new LectorSegmentos(registro);
+        int preguntas = registro.preguntas;
+        StringBuilder titulos = new StringBuilder("profesor,fecha");
+        for (int i = 1; i <= preguntas; i++) titulos.append(",p").append(i);
+        String encabezadoCsv = titulos.append('\n').toString();
+        // profesor,fecha y una puntuación de un dígito por pregunta
+        int maxFila = MAX_ENTERO + 1 + LARGO_FECHA + 2 * preguntas + 1;
+        return new PorBloques(Math.max(TAMANO_BLOQUE_CSV, encabezadoCsv.length() + maxFila)) {
+            boolean encabezado = true;
+
+            @Override
+            boolean siguienteBloque(ByteBuffer bloque) throws IOException {
+                if (encabezado) {
+                    ascii(bloque, encabezadoCsv);
+                    encabezado = false;
+                }
+                while (bloque.remaining() >= maxFila) {
+                    if (!lector.siguiente()) return false;
+                    entero(bloque, lector.profesor());
+                    bloque.put((byte) ',');
+                    fecha(bloque, lector.fecha());
+                    for (int i = 0; i < preguntas; i++) {
+                        bloque.put((byte) ',').put((byte) ('0' + lector.puntuacion(i)));
+                    }
+                    bloque.put((byte) '\n');
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Método para exportar las evaluaciones individuales en el formato binario por columnas
+     */
+    static RespuestaHttp.Generador evaluacionesColumnar(RegistroEvaluaciones registro) throws IOException {
+        LectorSegmentos lector = new LectorSegmentos(registro);
+        int preguntas = registro.preguntas;
+        int[] profesores = new int[FILAS_POR_BLOQUE];
+        long[] fechas = new long[FILAS_POR_BLOQUE];
+        byte[][] puntuaciones = new byte[preguntas][FILAS_POR_BLOQUE];
+        return new PorBloques(8 + 2 * 4 + FILAS_POR_BLOQUE * (4 + 8 + preguntas)) {
+            boolean encabezado = true;
+
+            @Override
+            boolean siguienteBloque(ByteBuffer bloque) throws IOException {
+                if (encabezado) {
+                    bloque.putInt(MAGICO_EVALUACIONES).putShort(VERSION).putShort((short) preguntas);
+                    encabezado = false;
+                }
+                int filas = 0;
+                while (filas < FILAS_POR_BLOQUE && lector.siguiente()) {
+                    profesores[filas] = lector.profesor();
+                    fechas[filas] = lector.fecha();
+                    for (int i = 0; i < preguntas; i++) puntuaciones[i][filas] = lector.puntuacion(i);
+                    filas++;
+                }
+                if (filas > 0) {
+                    bloque.putInt(filas);
+                    bloque.asIntBuffer().put(profesores, 0, filas);
+                    bloque.position(bloque.position() + filas * 4);
+                    bloque.asLongBuffer().put(fechas, 0, filas);
+                    bloque.position(bloque.position() + filas * 8);
+                    for (byte[] columna : puntuaciones) bloque.put(columna, 0, filas);
+                }
+                if (filas < FILAS_POR_BLOQUE) {
+                    bloque.putInt(0); // Fin
+                    return false;
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Método para exportar los resultados por pregunta de cada profesor en CSV
+     */
+    static RespuestaHttp.Generador resultadosCsv(Cuestionario cuestionario,
+                                                 SortedMap<Integer, AlmacenEvaluaciones.Resumen> resumenes) {
+        Iterator<Map.Entry<Integer, AlmacenEvaluaciones.Resumen>> profesores = resumenes.entrySet().iterator();
+        StringBuilder titulos = new StringBuilder(
+                "profesor,categoria,pregunta,evaluaciones,respuestas,suma,promedio,mediana,desviacion");
+        for (int v = 1; v <= cuestionario.escala(); v++) titulos.append(",n").append(v);
+        String encabezadoCsv = titulos.append('\n').toString();
+        // Seis enteros, tres números con dos decimales y un conteo por valor de la escala
+        int maxFila = 6 * (MAX_ENTERO + 1) + 3 * (MAX_ENTERO + 4) + cuestionario.escala() * (1 + MAX_ENTERO);
+        // Un profesor es una fila por pregunta y va entero en un bloque
+        long maxProfesor = (long) cuestionario.preguntas() * maxFila;
+        return new PorBloques((int) Math.max(TAMANO_BLOQUE_CSV, encabezadoCsv.length() + maxProfesor)) {
+            boolean encabezado = true;
+
+            @Override
+            boolean siguienteBloque(ByteBuffer bloque) {
+                if (encabezado) {
+                    ascii(bloque, encabezadoCsv);
+                    encabezado = false;
+                }
+                while (bloque.remaining() >= maxProfesor) {
+                    if (!profesores.hasNext()) return false;
+                    Map.Entry<Integer, AlmacenEvaluaciones.Resumen> e = profesores.next();
+                    AlmacenEvaluaciones.Resumen r = e.getValue();
+                    int pregunta = 0;
+                    for (int categoria = 0; categoria < cuestionario.categorias(); categoria++) {
+                        for (int i = 0; i < cuestionario.preguntasEn(categoria); i++, pregunta++) {
+                            entero(bloque, e.getKey());
+                            bloque.put((byte) ',');
+                            entero(bloque, categoria + 1);
+                            bloque.put((byte) ',');
+                            entero(bloque, i + 1);
+                            bloque.put((byte) ',');
+                            entero(bloque, r.evaluaciones);
+                            bloque.put((byte) ',');
+                            entero(bloque, r.respuestas(pregunta));
+                            bloque.put((byte) ',');
+                            entero(bloque, r.suma(pregunta));
+                            bloque.put((byte) ',');
+                            centesimos(bloque, r.promedio(pregunta));
+                            bloque.put((byte) ',');
+                            centesimos(bloque, r.mediana(pregunta));
+                            bloque.put((byte) ',');
+                            centesimos(bloque, r.desviacion(pregunta));
+                            for (int v = 1; v <= cuestionario.escala(); v++) {
+                                bloque.put((byte) ',');
+                                entero(bloque, r.conteo(pregunta, v));
+                            }
+                            bloque.put((byte) '\n');
+                        }
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Método para exportar los resultados en el formato binario por columnas (un solo bloque)
+     */
+    static RespuestaHttp.Generador resultadosColumnar(Cuestionario cuestionario,
+                                                      SortedMap<Integer, AlmacenEvaluaciones.Resumen> resumenes) {
+        int n = resumenes.size();
+        int celdas = cuestionario.celdas();
+        return new PorBloques(4 + 2 + 2 + 4 + 4 + n * (4 + 8 + celdas * 8)) {
+            @Override
+            boolean siguienteBloque(ByteBuffer bloque) {
+                bloque.putInt(MAGICO_RESULTADOS).putShort(VERSION).putShort((short) cuestionario.preguntas())
+                        .putInt(cuestionario.escala()).putInt(n);
+                for (int profesor : resumenes.keySet()) bloque.putInt(profesor);
+                for (AlmacenEvaluaciones.Resumen r : resumenes.values()) bloque.putLong(r.evaluaciones);
+                for (int celda = 0; celda < celdas; celda++) {
+                    for (AlmacenEvaluaciones.Resumen r : resumenes.values()) bloque.putLong(r.histograma[celda]);
+                }
+                return false;
+            }
+        };
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Escritura de texto en bytes
+    // ---------------------------------------------------------------------------------
+
+    private static void ascii(ByteBuffer bloque, String s) {
+        for (int i = 0; i < s.length(); i++) bloque.put((byte) s.charAt(i));
+    }
+
+    private static void entero(ByteBuffer bloque, long n) {
+        if (n < 0) {
+            bloque.put((byte) '-');
+            n = -n;
+        }
+        long divisor = 1;
+        while (divisor <= n / 10) divisor *= 10;
+        for (; divisor > 0; divisor /= 10) bloque.put((byte) ('0' + (n / divisor) % 10));
+    }
+
+    private static void digitos(ByteBuffer bloque, long n, int cantidad) {
+        long divisor = 1;
+        for (int i = 1; i < cantidad; i++) divisor *= 10;
+        for (; divisor > 0; divisor /= 10) {
+            bloque.put((byte) ('0' + (n / divisor) % 10));
+        }
+    }
+
+    private static void centesimos(ByteBuffer bloque, double n) {
+        long c = Math.round(n * 100);
+        entero(bloque, c / 100);
+        bloque.put((byte) '.');
+        digitos(bloque, c % 100, 2);
+    }
+
+    /**
+     * Fecha en milisegundos escrita como 2024-03-15T10:20:30Z (UTC), sin crear objetos
+     */
+    private static void fecha(ByteBuffer bloque, long ms) {
+        long dias = Math.floorDiv(ms, 86_400_000L);
+        long segundosDia = Math.floorMod(ms, 86_400_000L) / 1000;
+        // Conversión de días desde 1970 a año/mes/día del calendario gregoriano
+        long z = dias + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        long diaEra = z - era * 146_097;
+        long anioEra = (diaEra - diaEra / 1460 + diaEra / 36_524 - diaEra / 146_096) / 365;
+        long diaAnio = diaEra - (365 * anioEra + anioEra / 4 - anioEra / 100);
+        long mp = (5 * diaAnio + 2) / 153;
+        long dia = diaAnio - (153 * mp + 2) / 5 + 1;
+        long mes = mp < 10 ? mp + 3 : mp - 9;
+        long anio = anioEra + era * 400 + (mes <= 2 ? 1 : 0);
+
+        digitos(bloque, anio, 4);
+        bloque.put((byte) '-');
+        digitos(bloque, mes, 2);
+        bloque.put((byte) '-');
+        digitos(bloque, dia, 2);
+        bloque.put((byte) 'T');
+        digitos(bloque, segundosDia / 3600, 2);
+        bloque.put((byte) ':');
+        digitos(bloque, segundosDia / 60 % 60, 2);
+        bloque.put((byte) ':');
+        digitos(bloque, segundosDia % 60, 2);
+        bloque.put((byte) 'Z');
+    }
+}
@@ -0,0 +1,234 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.Month;
+import java.time.Year;
+import java.util.*;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Importación masiva de evaluaciones históricas desde un archivo CSV.
+ *
+ * Formato, una evaluación por línea (la primera línea puede ser un encabezado):
+ *   profesor,fecha,p1,p2,...,pN
+ * con una puntuación (1 a la escala) por pregunta, en el orden del cuestionario. Si la fecha
+ * empieza con AAAA-MM-DD (2024-03-15 o 2024-03-15T10:00:00Z, como la exportación) la
+ * evaluación cuenta en ese día (UTC), y si ese día no existe (2024-02-31) la línea se
+ * rechaza; cualquier otro valor se acepta y queda sin fecha. Las líneas de profesores que no
+ * están en el catálogo se descartan y se cuentan aparte.
+ *
+ * El archivo se mapea en memoria y se divide en trozos que se analizan en paralelo con
+ * fork/join, leyendo bytes directamente (sin crear un String por línea). Cada trozo acumula
+ * sus propios contadores por profesor y día y al final se suman de a pares.
+ */
+final class ImportadorEvaluaciones {
+    private static final long TAMANO_TROZO = 16L << 20; // Bytes de archivo por tarea
+    private static final int MAX_LINEA = 4096;          // Una línea puede pasarse del final de su trozo hasta aquí
+    private static final int FECHA_INVALIDA = Integer.MIN_VALUE + 1; // AAAA-MM-DD de un día que no existe
+
+    private ImportadorEvaluaciones() {}
+
+    /**
+     * Contadores de una parte del archivo. Por profesor y día (ver AlmacenEvaluaciones.clave):
+     * el histograma de respuestas seguido de la cantidad de evaluaciones (celdas + 1 posiciones).
+     */
+    static final class Parcial {
+        final Map<Long, long[]> contadores = new HashMap<>();
+        long filas;                   // Evaluaciones válidas
+        long rechazadas;              // Líneas con formato, fecha o puntuaciones no válidas
+        long desconocidas;            // Líneas válidas de profesores que no están en el catálogo
+        long primeraRechazada = -1;   // Posición (en bytes) de la primera línea rechazada
+
+        private void sumar(Parcial otro) {
+            for (Map.Entry<Long, long[]> e : otro.contadores.entrySet()) {
+                long[] propio = contadores.putIfAbsent(e.getKey(), e.getValue());
+                if (propio != null) {
+                    long[] ajeno = e.getValue();
+                    for (int i = 0; i < propio.length; i++) propio[i] += ajeno[i];
+                }
+            }
+            filas += otro.filas;
+            rechazadas += otro.rechazadas;
+            desconocidas += otro.desconocidas;
+            if (primeraRechazada < 0 || (otro.primeraRechazada >= 0 && otro.primeraRechazada < primeraRechazada)) {
+                primeraRechazada = otro.primeraRechazada;
+            }
+        }
+    }
+
+    /**
+     * Método para analizar un archivo CSV completo y devolver sus contadores por profesor
+     */
+    static Parcial analizar(Path archivo, Cuestionario cuestionario, CatalogoProfesores catalogo) throws IOException {
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            long tamano = canal.size();
+            int trozos = (int) Math.max(1, (tamano + TAMANO_TROZO - 1) / TAMANO_TROZO);
+            try {
+                return new Tarea(cuestionario, catalogo, canal, tamano, 0, trozos).invoke();
+            } catch (RuntimeException e) {
+                if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Analiza los trozos [desde, hasta): si es más de uno los reparte en dos subtareas
+     */
+    private static final class Tarea extends RecursiveTask<Parcial> {
+        private static final long serialVersionUID = 1L;
+
+        private final Cuestionario cuestionario;
+        private final CatalogoProfesores catalogo;
+        private final FileChannel canal;
+        private final long tamano;
+        private final int desde;
+        private final int hasta;
+
+        Tarea(Cuestionario cuestionario, CatalogoProfesores catalogo, FileChannel canal, long tamano, int desde, int hasta) {
+            this.cuestionario = cuestionario;
+            this.catalogo = catalogo;
+            this.canal = canal;
+            this.tamano = tamano;
+            this.desde = desde;
+            this.hasta = hasta;
+        }
+
+        @Override
+        protected Parcial compute() {
+            if (hasta - desde > 1) {
+                int medio = (desde + hasta) >>> 1;
+                Tarea izquierda = new Tarea(cuestionario, catalogo, canal, tamano, desde, medio);
+                izquierda.fork();
+                Parcial derecha = new Tarea(cuestionario, catalogo, canal, tamano, medio, hasta).compute();
+                Parcial resultado = izquierda.join();
+                resultado.sumar(derecha);
+                return resultado;
+            }
+            try {
+                return analizarTrozo(cuestionario, catalogo, canal, tamano, desde * TAMANO_TROZO,
+                        Math.min(tamano, (desde + 1) * TAMANO_TROZO));
+            } catch (IOException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Analiza las líneas que empiezan en [inicio, fin). La última puede terminar después de fin.
+     */
+    private static Parcial analizarTrozo(Cuestionario cuestionario, CatalogoProfesores catalogo, FileChannel canal,
+                                         long tamano, long inicio, long fin) throws IOException {
+        Parcial parcial = new Parcial();
+        long base = Math.max(0, inicio - 1);
+        MappedByteBuffer datos = canal.map(FileChannel.MapMode.READ_ONLY, base, Math.min(tamano, fin + MAX_LINEA) - base);
+        int limite = datos.limit();
+        int finTrozo = (int) (fin - base);
+        int pos = (int) (inicio - base);
+
+        if (inicio > 0) {
+            // La línea que cruza el comienzo del trozo la analiza el trozo anterior
+            if (datos.get(0) != '\n') {
+                while (pos < limite && datos.get(pos) != '\n') pos++;
+                pos++;
+            }
+        } else if (limite > 0 && (datos.get(0) < '0' || datos.get(0) > '9')) {
+            // Encabezado
+            while (pos < limite && datos.get(pos) != '\n') pos++;
+            pos++;
+        }
+
+        int escala = cuestionario.escala();
+        int celdas = cuestionario.celdas();
+        int[] puntuaciones = new int[cuestionario.preguntas()];
+        long ultimaClave = -1;
+        long[] contador = null;
+        while (pos < finTrozo) {
+            int finLinea = pos;
+            while (finLinea < limite && datos.get(finLinea) != '\n') finLinea++;
+            if (finLinea == limite && base + limite < tamano) {
+                throw new IOException("Línea demasiado larga en la posición " + (base + pos));
+            }
+            int largo = finLinea;
+            if (largo > pos && datos.get(largo - 1) == '\r') largo--;
+
+            if (largo > pos) {
+                long clave = analizarLinea(datos, pos, largo, escala, puntuaciones);
+                if (clave >= 0 && catalogo.profesor(AlmacenEvaluaciones.profesorDe(clave)) == null) {
+                    parcial.desconocidas++;
+                } else if (clave >= 0) {
+                    if (clave != ultimaClave) {
+                        contador = parcial.contadores.computeIfAbsent(clave, c -> new long[celdas + 1]);
+                        ultimaClave = clave;
+                    }
+                    for (int pregunta = 0; pregunta < puntuaciones.length; pregunta++) {
+                        contador[pregunta * escala + puntuaciones[pregunta] - 1]++;
+                    }
+                    contador[celdas]++;
+                    parcial.filas++;
+                } else {
+                    parcial.rechazadas++;
+                    if (parcial.primeraRechazada < 0) parcial.primeraRechazada = base + pos;
+                }
+            }
+            pos = finLinea + 1;
+        }
+        return parcial;
+    }
+
+    /**
+     * Analiza una línea "profesor,fecha,p1,...,pN" entre [pos, fin).
+     * Devuelve la clave de profesor y día, o -1 si la línea no es válida.
+     */
+    private static long analizarLinea(MappedByteBuffer datos, int pos, int fin, int escala, int[] puntuaciones) {
+        int profesorId = 0;
+        int digitos = 0;
+        while (pos < fin && datos.get(pos) >= '0' && datos.get(pos) <= '9') {
+            profesorId = profesorId * 10 + (datos.get(pos++) - '0');
+            if (++digitos > 9) return -1;
+        }
+        if (profesorId == 0 || pos >= fin || datos.get(pos++) != ',') return -1;
+
+        // Fecha: se toma el día si empieza con AAAA-MM-DD y se salta hasta la coma
+        int inicioFecha = pos;
+        while (pos < fin && datos.get(pos) != ',') pos++;
+        if (pos >= fin) return -1;
+        int dia = pos - inicioFecha >= 10 ? leerDia(datos, inicioFecha) : AlmacenEvaluaciones.SIN_FECHA;
+        if (dia == FECHA_INVALIDA) return -1;
+
+        for (int i = 0; i < puntuaciones.length; i++) {
+            if (pos + 2 > fin || datos.get(pos) != ',') return -1;
+            int puntuacion = datos.get(pos + 1) - '0';
+            if (puntuacion < 1 || puntuacion > escala) return -1;
+            puntuaciones[i] = puntuacion;
+            pos += 2;
+        }
+        return pos == fin ? AlmacenEvaluaciones.clave(profesorId, dia) : -1;
+    }
+
+    /**
+     * Lee una fecha AAAA-MM-DD y devuelve el día desde 1970-01-01, SIN_FECHA si no tiene ese
+     * formato o FECHA_INVALIDA si lo tiene pero el día no existe
+     */
+    private static int leerDia(MappedByteBuffer datos, int pos) {
+        int anio = 0, mes = 0, diaMes = 0;
+        for (int i = 0; i < 10; i++) {
+            int c = datos.get(pos + i);
+            if (i == 4 || i == 7) {
+                if (c != '-') return AlmacenEvaluaciones.SIN_FECHA;
+                continue;
+            }
+            if (c < '0' || c > '9') return AlmacenEvaluaciones.SIN_FECHA;
+            if (i < 4) anio = anio * 10 + (c - '0');
+            else if (i < 7) mes = mes * 10 + (c - '0');
+            else diaMes = diaMes * 10 + (c - '0');
+        }
+        if (mes < 1 || mes > 12 || diaMes < 1 || diaMes > Month.of(mes).length(Year.isLeap(anio))) return FECHA_INVALIDA;
+
+        // Días desde el 1 de marzo del año 0 (calendario gregoriano), menos los que hay hasta 1970-01-01
+        if (mes <= 2) anio--;
+        int diaDelAnio = (153 * (mes > 2 ? mes - 3 : mes + 9) + 2) / 5 + diaMes - 1;
+        return anio * 365 + anio / 4 - anio / 100 + anio / 400 + diaDelAnio - 719_468;
+    }
+}
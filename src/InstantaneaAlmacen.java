@@ -0,0 +1,165 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Instantáneas de los contadores agregados del almacén.
+ *
+ * Una instantánea guarda los histogramas de todos los profesores junto con el número del
+ * primer segmento del registro que NO incluye; al arrancar se carga la instantánea y solo
+ * se reproducen los segmentos posteriores, así el tiempo de inicio no crece con la historia.
+ *
+ *   instantanea-00000042.bin:
+ *     mágico "EVS1" | versión (short) | preguntas (short) | escala (int) | siguiente segmento (int)
+ *     | profesores (int) | por profesor: id (int), evaluaciones sin fecha (long), su histograma (long[]),
+ *       días (int), por día: día (int), evaluaciones (long), histograma (long[])
+ *     | CRC32 de todo lo anterior (int)
+ *
+ * La versión 1 (sin días: por profesor solo id, evaluaciones e histograma) se sigue leyendo;
+ * todo lo que contiene queda sin fecha.
+ *
+ * Se escribe en un archivo temporal que luego se renombra de forma atómica: una caída a mitad
+ * de escritura deja la instantánea anterior intacta.
+ */
+final class InstantaneaAlmacen {
+    private static final int MAGICO = 0x45565331; // "EVS1"
+    private static final short VERSION = 2;
+    private static final short VERSION_SIN_DIAS = 1;
+    private static final int TAMANO_MINIMO = 4 + 2 + 2 + 4 + 4 + 4 + 4; // Cabecera y CRC: sin profesores
+    private static final String PREFIJO = "instantanea-";
+    private static final String EXTENSION = ".bin";
+
+    private InstantaneaAlmacen() {}
+
+    /**
+     * Método para escribir una instantánea que cubre los segmentos anteriores a siguienteSegmento.
+     * Al terminar borra las instantáneas más antiguas.
+     */
+    static void escribir(Path carpeta, int siguienteSegmento, Cuestionario cuestionario,
+                         SortedMap<Integer, AlmacenEvaluaciones.Resumen> resumenes,
+                         Map<Integer, SortedMap<Integer, AlmacenEvaluaciones.Resumen>> dias) throws IOException {
+        int porHistograma = 8 + cuestionario.celdas() * 8;
+        long tamano = TAMANO_MINIMO;
+        for (Integer profesorId : resumenes.keySet()) {
+            tamano += 4 + porHistograma + 4 + (long) dias.get(profesorId).size() * (4 + porHistograma);
+        }
+        if (tamano > Integer.MAX_VALUE - 8) throw new IOException("La instantánea es demasiado grande");
+        ByteBuffer buf = ByteBuffer.allocate((int) tamano);
+        buf.putInt(MAGICO).putShort(VERSION).putShort((short) cuestionario.preguntas())
+                .putInt(cuestionario.escala()).putInt(siguienteSegmento).putInt(resumenes.size());
+        for (Map.Entry<Integer, AlmacenEvaluaciones.Resumen> e : resumenes.entrySet()) {
+            SortedMap<Integer, AlmacenEvaluaciones.Resumen> delProfesor = dias.get(e.getKey());
+            // Lo que no está en ningún día: el total menos la suma de los días
+            long sinFecha = e.getValue().evaluaciones;
+            long[] histogramaSinFecha = e.getValue().histograma.clone();
+            for (AlmacenEvaluaciones.Resumen dia : delProfesor.values()) {
+                sinFecha -= dia.evaluaciones;
+                for (int c = 0; c < histogramaSinFecha.length; c++) histogramaSinFecha[c] -= dia.histograma[c];
+            }
+            buf.putInt(e.getKey()).putLong(sinFecha);
+            for (long conteo : histogramaSinFecha) buf.putLong(conteo);
+            buf.putInt(delProfesor.size());
+            for (Map.Entry<Integer, AlmacenEvaluaciones.Resumen> dia : delProfesor.entrySet()) {
+                buf.putInt(dia.getKey()).putLong(dia.getValue().evaluaciones);
+                for (long conteo : dia.getValue().histograma) buf.putLong(conteo);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putInt((int) crc.getValue());
+        buf.flip();
+
+        Path destino = ruta(carpeta, siguienteSegmento);
+        Path temporal = carpeta.resolve(destino.getFileName() + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buf.hasRemaining()) canal.write(buf);
+            canal.force(true);
+        }
+        Files.move(temporal, destino, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        for (int anterior : existentes(carpeta)) {
+            if (anterior < siguienteSegmento) Files.deleteIfExists(ruta(carpeta, anterior));
+        }
+    }
+
+    /**
+     * Método para cargar en el almacén la instantánea más reciente.
+     * Devuelve el primer segmento que hay que reproducir (1 si no hay instantánea).
+     */
+    static int cargarUltima(Path carpeta, AlmacenEvaluaciones almacen) throws IOException {
+        // Restos de una escritura interrumpida
+        try (Stream<Path> archivos = Files.list(carpeta)) {
+            for (Path p : (Iterable<Path>) archivos::iterator) {
+                String nombre = p.getFileName().toString();
+                if (nombre.startsWith(PREFIJO) && nombre.endsWith(EXTENSION + ".tmp")) Files.delete(p);
+            }
+        }
+
+        List<Integer> numeros = existentes(carpeta);
+        if (numeros.isEmpty()) return 1;
+        int siguienteSegmento = numeros.get(numeros.size() - 1);
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(ruta(carpeta, siguienteSegmento)));
+
+        CRC32 crc = new CRC32();
+        if (buf.limit() >= TAMANO_MINIMO) crc.update(buf.array(), 0, buf.limit() - 4);
+        if (buf.limit() < TAMANO_MINIMO || (int) crc.getValue() != buf.getInt(buf.limit() - 4) || buf.getInt() != MAGICO) {
+            throw new IOException("La instantánea " + ruta(carpeta, siguienteSegmento).getFileName() + " está dañada");
+        }
+        short version = buf.getShort();
+        if (version != VERSION && version != VERSION_SIN_DIAS) {
+            throw new IOException("La instantánea " + ruta(carpeta, siguienteSegmento).getFileName()
+                    + " tiene una versión desconocida (" + version + ")");
+        }
+        Cuestionario cuestionario = almacen.cuestionario;
+        if (buf.getShort() != cuestionario.preguntas() || buf.getInt() != cuestionario.escala()) {
+            throw new IOException("La instantánea " + ruta(carpeta, siguienteSegmento).getFileName()
+                    + " es de un cuestionario con otras preguntas o escala");
+        }
+        if (buf.getInt() != siguienteSegmento) {
+            throw new IOException("La instantánea " + ruta(carpeta, siguienteSegmento).getFileName() + " está dañada");
+        }
+        int profesores = buf.getInt();
+        long[] histograma = new long[cuestionario.celdas()];
+        for (int i = 0; i < profesores; i++) {
+            int profesorId = buf.getInt();
+            long evaluaciones = buf.getLong();
+            for (int c = 0; c < histograma.length; c++) histograma[c] = buf.getLong();
+            if (evaluaciones > 0) almacen.sumar(profesorId, histograma, evaluaciones);
+            if (version == VERSION_SIN_DIAS) continue;
+            int dias = buf.getInt();
+            for (int d = 0; d < dias; d++) {
+                int dia = buf.getInt();
+                evaluaciones = buf.getLong();
+                for (int c = 0; c < histograma.length; c++) histograma[c] = buf.getLong();
+                almacen.sumar(profesorId, dia, histograma, evaluaciones);
+            }
+        }
+        return siguienteSegmento;
+    }
+
+    private static Path ruta(Path carpeta, int siguienteSegmento) {
+        return carpeta.resolve(String.format("%s%08d%s", PREFIJO, siguienteSegmento, EXTENSION));
+    }
+
+    private static List<Integer> existentes(Path carpeta) throws IOException {
+        List<Integer> numeros = new ArrayList<>();
+        try (Stream<Path> archivos = Files.list(carpeta)) {
+            for (Path p : (Iterable<Path>) archivos::iterator) {
+                String nombre = p.getFileName().toString();
+                if (!nombre.startsWith(PREFIJO) || !nombre.endsWith(EXTENSION)) continue;
+                try {
+                    numeros.add(Integer.parseInt(nombre.substring(PREFIJO.length(), nombre.length() - EXTENSION.length())));
+                } catch (NumberFormatException e) {
+                    // Archivo ajeno: se ignora
+                }
+            }
+        }
+        Collections.sort(numeros);
+        return numeros;
+    }
+}
@@ -0,0 +1,55 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Lee solicitudes HTTP sucesivas de un socket bloqueante.
+ * Los bytes que sobran después de una solicitud se conservan en el buffer, así las
+ * solicitudes encadenadas (pipelining) se atienden sin volver a leer del socket.
+ */
+final class LectorHttp {
+    private static final int CAPACIDAD_MAXIMA = SolicitudHttp.MAX_CABECERAS + SolicitudHttp.MAX_CUERPO;
+
+    private final InputStream in;
+    private ByteBuffer buf = ByteBuffer.allocate(8192).flip(); // Siempre en modo lectura: position..limit pendiente
+
+    LectorHttp(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Método para leer la siguiente solicitud; devuelve null si el cliente cerró la conexión
+     */
+    SolicitudHttp leer() throws IOException {
+        while (true) {
+            SolicitudHttp solicitud = SolicitudHttp.analizar(buf);
+            if (solicitud != null) return solicitud;
+            if (!llenar()) {
+                if (buf.hasRemaining()) throw new SolicitudHttp.Invalida("400 Bad Request"); // Solicitud cortada
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Indica si ya hay bytes de otra solicitud disponibles sin bloquear
+     */
+    boolean hayDatosPendientes() throws IOException {
+        return buf.hasRemaining() || in.available() > 0;
+    }
+
+    private boolean llenar() throws IOException {
+        buf.compact();
+        if (!buf.hasRemaining()) {
+            if (buf.capacity() >= CAPACIDAD_MAXIMA) throw new SolicitudHttp.Invalida("431 Request Header Fields Too Large");
+            ByteBuffer mayor = ByteBuffer.allocate(Math.min(buf.capacity() * 2, CAPACIDAD_MAXIMA));
+            buf.flip();
+            mayor.put(buf);
+            buf = mayor;
+        }
+        int leidos = in.read(buf.array(), buf.position(), buf.remaining());
+        if (leidos > 0) buf.position(buf.position() + leidos);
+        buf.flip();
+        return leidos > 0;
+    }
+}
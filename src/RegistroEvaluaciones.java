@@ -0,0 +1,625 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Registro en disco de las evaluaciones, de solo anexado (append-only).
+ *
+ * Cada evaluación completa se guarda como un registro binario de tamaño fijo en archivos
+ * de segmento (evaluaciones-00000001.log, evaluaciones-00000002.log, ...):
+ *
+ *   cabecera de segmento (16 bytes): mágico "EVL1" | versión (short) | preguntas (short) | escala (short) | reservado (6)
+ *   registro: profesor (int) | fecha en ms (long) | una puntuación por pregunta (byte) | relleno | CRC32 (int)
+ *
+ * El tamaño del registro depende del cuestionario: con 15 preguntas ocupa 32 bytes. Un solo hilo escritor junta todas las
+ * evaluaciones que llegaron mientras se hacía el último force (group commit), las escribe
+ * juntas, hace un único FileChannel.force y recién entonces las suma al almacén y avisa a
+ * quien las envió. Si la escritura o el force fallan, lo que el lote alcanzó a escribir se
+ * quita del segmento: esas evaluaciones se informan como no guardadas y no deben reproducirse
+ * al arrancar. Al arrancar se recorren los segmentos con memoria mapeada. En el último
+ * segmento, lo que sigue al primer registro incompleto, con CRC incorrecto o con una puntuación
+ * fuera de la escala (caída a mitad de escritura) se descarta. Los segmentos anteriores ya
+ * estaban cerrados: un registro dañado ahí es corrupción del disco y se saltea solo ese
+ * registro (son de tamaño fijo), sin tocar el archivo. Un segmento de un cuestionario con otras preguntas o
+ * escala no se reproduce: el arranque falla.
+ *
+ * Cada cierto tiempo (y al cerrar) se toma una instantánea de los contadores (ver
+ * InstantaneaAlmacen): el hilo escritor pasa a un segmento nuevo, copia el almacén y otro
+ * hilo escribe la copia. Los segmentos que la instantánea ya cubre se mueven a datos/archivo
+ * (o se borran), así al arrancar solo se reproduce lo escrito después de la última instantánea.
+ */
+final class RegistroEvaluaciones implements AutoCloseable {
+    static final int MAGICO = 0x45564C31; // "EVL1"
+    static final short VERSION = 2; // 1: sin la escala en la cabecera
+    static final int TAMANO_CABECERA = 16;
+    private static final int REGISTROS_POR_SEGMENTO = 1 << 20; // Por omisión
+    private static final int MAX_LOTE = 4096;
+    private static final String PREFIJO = "evaluaciones-";
+    private static final String EXTENSION = ".log";
+    private static final String CARPETA_ARCHIVO = "archivo";
+
+    private final Path carpeta;
+    private final AlmacenEvaluaciones almacen;
+    final int preguntas;       // Puntuaciones por registro (las del cuestionario)
+    final int escala;          // Puntuación máxima de cada respuesta
+    final int tamanoRegistro;  // Alineado a 4 bytes, con el CRC al final
+    private final BlockingQueue<Pendiente> cola; // Acotada: si se llena, agregar() rechaza la evaluación
+    private final ByteBuffer lote;
+    private final CRC32 crc = new CRC32();
+    private final Thread escritor;
+    private final ScheduledExecutorService instantaneas; // Programa y escribe las instantáneas
+    private final boolean archivarSegmentos;             // false: los segmentos cubiertos se borran
+    private final int registrosPorSegmento;
+    private final Canales canales;                       // Abre los segmentos en los que se escribe
+    private volatile boolean cerrado;
+
+    // Segmento activo (solo lo usa el hilo escritor después de abrir)
+    private FileChannel segmento;
+    private int numeroSegmento;
+    private long registrosEnSegmento;
+    private long registrosDesdeInstantanea;
+
+    /**
+     * Evaluación esperando ser escrita
+     */
+    private static final class Pendiente {
+        final int profesorId;
+        final long fecha;
+        final byte[] puntuaciones;
+        final Map<Long, long[]> importados; // Contadores de una importación masiva (o null)
+        final CompletableFuture<Void> hecho = new CompletableFuture<>();
+
+        Pendiente(int profesorId, long fecha, byte[] puntuaciones) {
+            this.profesorId = profesorId;
+            this.fecha = fecha;
+            this.puntuaciones = puntuaciones;
+            this.importados = null;
+        }
+
+        Pendiente(Map<Long, long[]> importados) {
+            this.profesorId = 0;
+            this.fecha = 0;
+            this.puntuaciones = null;
+            this.importados = importados;
+        }
+    }
+
+    /**
+     * Abre los archivos de segmento para escribir (FileChannel::open; las pruebas simulan fallas del disco)
+     */
+    interface Canales {
+        FileChannel abrir(Path ruta, OpenOption... opciones) throws IOException;
+    }
+
+    // Marcas que se encolan junto con las evaluaciones
+    private static final Pendiente FIN = new Pendiente(0, 0, null);
+    private static final Pendiente INSTANTANEA = new Pendiente(0, 0, null);
+
+    private RegistroEvaluaciones(Path carpeta, AlmacenEvaluaciones almacen, int capacidadCola, boolean archivarSegmentos,
+                                 int registrosPorSegmento, Canales canales) {
+        this.carpeta = carpeta;
+        this.cola = new LinkedBlockingQueue<>(capacidadCola);
+        this.almacen = almacen;
+        this.preguntas = almacen.cuestionario.preguntas();
+        this.escala = almacen.cuestionario.escala();
+        this.tamanoRegistro = ((4 + 8 + preguntas + 3) & ~3) + 4;
+        this.lote = ByteBuffer.allocateDirect(MAX_LOTE * tamanoRegistro);
+        this.archivarSegmentos = archivarSegmentos;
+        this.registrosPorSegmento = registrosPorSegmento;
+        this.canales = canales;
+        this.escritor = new Thread(this::escribirLotes, "registro-evaluaciones");
+        this.escritor.setDaemon(true);
+        this.instantaneas = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "instantaneas");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Método para abrir el registro: recupera las evaluaciones guardadas en el almacén
+     * y deja listo el segmento activo para seguir anexando. Cada minutosInstantanea se
+     * toma una instantánea si hubo evaluaciones nuevas. Como mucho capacidadCola evaluaciones
+     * pueden estar esperando ser escritas.
+     */
+    static RegistroEvaluaciones abrir(Path carpeta, AlmacenEvaluaciones almacen, int capacidadCola,
+                                      int minutosInstantanea, boolean archivarSegmentos) throws IOException {
+        return abrir(carpeta, almacen, capacidadCola, minutosInstantanea, archivarSegmentos, REGISTROS_POR_SEGMENTO);
+    }
+
+    /**
+     * Igual que abrir, con otra cantidad de registros por segmento (para las pruebas)
+     */
+    static RegistroEvaluaciones abrir(Path carpeta, AlmacenEvaluaciones almacen, int capacidadCola,
+                                      int minutosInstantanea, boolean archivarSegmentos, int registrosPorSegmento)
+            throws IOException {
+        return abrir(carpeta, almacen, capacidadCola, minutosInstantanea, archivarSegmentos, registrosPorSegmento,
+                FileChannel::open);
+    }
+
+    /**
+     * Igual que abrir, con otra forma de abrir los segmentos (para simular fallas en las pruebas)
+     */
+    static RegistroEvaluaciones abrir(Path carpeta, AlmacenEvaluaciones almacen, int capacidadCola,
+                                      int minutosInstantanea, boolean archivarSegmentos, int registrosPorSegmento,
+                                      Canales canales) throws IOException {
+        Files.createDirectories(carpeta);
+        RegistroEvaluaciones registro = new RegistroEvaluaciones(carpeta, almacen, capacidadCola, archivarSegmentos,
+                registrosPorSegmento, canales);
+        registro.recuperar();
+        registro.escritor.start();
+        // Con la cola llena se omite: el escritor está ocupado y lo intentará en el próximo turno
+        registro.instantaneas.scheduleWithFixedDelay(() -> registro.cola.offer(INSTANTANEA),
+                minutosInstantanea, minutosInstantanea, TimeUnit.MINUTES);
+        return registro;
+    }
+
+    /**
+     * Método para agregar una evaluación. El futuro se completa cuando ya está en disco
+     * y sumada al almacén. Si la cola está llena lanza RejectedExecutionException sin
+     * esperar, para que quien llama pueda pedir al cliente que reintente.
+     */
+    CompletableFuture<Void> agregar(int profesorId, byte[] puntuaciones) {
+        almacen.cuestionario.validar(puntuaciones);
+        Pendiente pendiente = new Pendiente(profesorId, System.currentTimeMillis(), puntuaciones);
+        if (cerrado) {
+            pendiente.hecho.completeExceptionally(new IllegalStateException("El registro está cerrado"));
+            return pendiente.hecho;
+        }
+        if (!cola.offer(pendiente)) {
+            throw new RejectedExecutionException("Hay demasiadas evaluaciones esperando ser guardadas");
+        }
+        return pendiente.hecho;
+    }
+
+    /**
+     * Método para sumar al almacén los contadores de una importación masiva (por profesor y
+     * día, ver AlmacenEvaluaciones.clave: histograma seguido de la cantidad de evaluaciones).
+     * No se escribe un registro por evaluación: el escritor los suma entre dos lotes y toma
+     * enseguida una instantánea, y el futuro se completa cuando esa instantánea ya está en disco.
+     */
+    CompletableFuture<Void> importar(Map<Long, long[]> contadores) throws InterruptedException {
+        Pendiente pendiente = new Pendiente(contadores);
+        if (cerrado) {
+            pendiente.hecho.completeExceptionally(new IllegalStateException("El registro está cerrado"));
+            return pendiente.hecho;
+        }
+        cola.put(pendiente);
+        return pendiente.hecho;
+    }
+
+    /**
+     * Método para cerrar el registro después de escribir lo que quede pendiente
+     */
+    @Override
+    public void close() throws IOException {
+        if (cerrado) return;
+        cerrado = true;
+        try {
+            cola.put(FIN);
+            escritor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        instantaneas.shutdown();
+        try {
+            instantaneas.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (segmento != null) segmento.close();
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Escritura
+    // ---------------------------------------------------------------------------------
+
+    private void escribirLotes() {
+        List<Pendiente> pendientes = new ArrayList<>(MAX_LOTE);
+        boolean terminar = false;
+        while (!terminar) {
+            try {
+                pendientes.add(cola.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            cola.drainTo(pendientes, MAX_LOTE - 1);
+            if (pendientes.remove(FIN)) terminar = true;
+            boolean instantanea = pendientes.removeIf(p -> p == INSTANTANEA);
+            List<Pendiente> importaciones = new ArrayList<>();
+            pendientes.removeIf(p -> p.importados != null && importaciones.add(p));
+
+            try {
+                escribirLote(pendientes);
+                for (Pendiente p : pendientes) {
+                    almacen.registrar(p.profesorId, p.fecha, p.puntuaciones);
+                    p.hecho.complete(null);
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error al guardar evaluaciones: " + e.getMessage());
+                for (Pendiente p : pendientes) p.hecho.completeExceptionally(e);
+            }
+            pendientes.clear();
+
+            // Las importaciones se suman después del lote y quedan cubiertas por una instantánea
+            if (!importaciones.isEmpty()) {
+                try {
+                    for (Pendiente p : importaciones) {
+                        for (Map.Entry<Long, long[]> e : p.importados.entrySet()) {
+                            sumarAlAlmacen(e.getKey(), e.getValue());
+                            registrosDesdeInstantanea += e.getValue()[e.getValue().length - 1];
+                        }
+                    }
+                    tomarInstantanea(true);
+                    for (Pendiente p : importaciones) p.hecho.complete(null);
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Error al guardar la importación: " + e.getMessage());
+                    for (Pendiente p : importaciones) p.hecho.completeExceptionally(e);
+                }
+                instantanea = false; // Ya se tomó
+            }
+
+            // Al cerrar también se toma una instantánea, así el próximo arranque es inmediato
+            if (instantanea || terminar) {
+                try {
+                    tomarInstantanea(terminar);
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Error al tomar la instantánea: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void escribirLote(List<Pendiente> pendientes) throws IOException {
+        if (pendientes.isEmpty()) return;
+        int primerSegmento = numeroSegmento;
+        long registrosAntes = registrosEnSegmento;
+        long desdeInstantanea = registrosDesdeInstantanea;
+        try {
+            registrosDesdeInstantanea += pendientes.size();
+            lote.clear();
+            for (Pendiente p : pendientes) {
+                if (registrosEnSegmento + lote.position() / tamanoRegistro >= registrosPorSegmento) {
+                    volcar();
+                    segmento.force(false);
+                    segmento.close();
+                    crearSegmento(numeroSegmento + 1);
+                }
+                codificar(p);
+            }
+            volcar();
+            segmento.force(false);
+        } catch (IOException | RuntimeException e) {
+            registrosDesdeInstantanea = desdeInstantanea;
+            try {
+                deshacerLote(primerSegmento, registrosAntes);
+            } catch (IOException | RuntimeException error) {
+                e.addSuppressed(error);
+                System.err.println("Error al deshacer el lote: " + error.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Método para quitar del disco lo que escribió un lote que falló: se borran los segmentos
+     * que creó, se corta el segmento donde empezó en su largo anterior y se lo vuelve a abrir
+     * como segmento activo (el cambio de segmento pudo dejarlo cerrado)
+     */
+    private void deshacerLote(int primerSegmento, long registrosAntes) throws IOException {
+        try {
+            segmento.close();
+        } catch (IOException e) {
+            // El canal ya falló: lo que importa es el archivo
+        }
+        for (int numero : segmentosExistentes()) {
+            if (numero > primerSegmento) Files.delete(rutaSegmento(numero));
+        }
+        long fin = TAMANO_CABECERA + registrosAntes * tamanoRegistro;
+        segmento = canales.abrir(rutaSegmento(primerSegmento), StandardOpenOption.WRITE);
+        segmento.truncate(fin);
+        segmento.force(true);
+        segmento.position(fin);
+        numeroSegmento = primerSegmento;
+        registrosEnSegmento = registrosAntes;
+        lote.clear();
+    }
+
+    /**
+     * Método para tomar una instantánea (solo desde el hilo escritor, entre lotes).
+     * En este punto el almacén contiene exactamente lo escrito en los segmentos hasta el
+     * activo, así que se pasa a un segmento nuevo y la copia cubre todos los anteriores.
+     * Copiar los contadores es inmediato; la escritura del archivo y la compactación se
+     * hacen en el hilo de instantáneas para no frenar las evaluaciones ni las lecturas.
+     */
+    private void tomarInstantanea(boolean esperar) throws IOException {
+        if (registrosDesdeInstantanea == 0) return;
+        segmento.close();
+        crearSegmento(numeroSegmento + 1);
+        int siguienteSegmento = numeroSegmento;
+        SortedMap<Integer, AlmacenEvaluaciones.Resumen> copia = almacen.resumenes();
+        Map<Integer, SortedMap<Integer, AlmacenEvaluaciones.Resumen>> copiaDias = new HashMap<>();
+        for (Integer profesorId : copia.keySet()) copiaDias.put(profesorId, almacen.dias(profesorId));
+        registrosDesdeInstantanea = 0;
+
+        Future<?> escritura = instantaneas.submit(() -> {
+            try {
+                InstantaneaAlmacen.escribir(carpeta, siguienteSegmento, almacen.cuestionario, copia, copiaDias);
+                compactar(siguienteSegmento);
+            } catch (IOException e) {
+                System.err.println("Error al escribir la instantánea: " + e.getMessage());
+                throw new UncheckedIOException(e); // Para quien espera la escritura
+            }
+        });
+        if (esperar) {
+            try {
+                escritura.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Método para retirar los segmentos anteriores a siguienteSegmento (ya cubiertos por una
+     * instantánea): se mueven a la carpeta de archivo o se borran
+     */
+    private void compactar(int siguienteSegmento) throws IOException {
+        for (int numero : segmentosExistentes()) {
+            if (numero >= siguienteSegmento) break;
+            Path ruta = rutaSegmento(numero);
+            if (archivarSegmentos) {
+                Path archivo = carpeta.resolve(CARPETA_ARCHIVO);
+                Files.createDirectories(archivo);
+                Files.move(ruta, archivo.resolve(ruta.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.delete(ruta);
+            }
+        }
+    }
+
+    private void codificar(Pendiente p) {
+        int inicio = lote.position();
+        lote.putInt(p.profesorId);
+        lote.putLong(p.fecha);
+        lote.put(p.puntuaciones);
+        while (lote.position() < inicio + tamanoRegistro - 4) lote.put((byte) 0);
+        lote.putInt(crc(lote, inicio, tamanoRegistro - 4));
+    }
+
+    private void volcar() throws IOException {
+        lote.flip();
+        registrosEnSegmento += lote.remaining() / tamanoRegistro;
+        while (lote.hasRemaining()) segmento.write(lote);
+        lote.clear();
+    }
+
+    private int crc(ByteBuffer buf, int desde, int largo) {
+        ByteBuffer vista = buf.duplicate();
+        vista.limit(desde + largo).position(desde);
+        crc.reset();
+        crc.update(vista);
+        return (int) crc.getValue();
+    }
+
+    private Path rutaSegmento(int numero) {
+        return carpeta.resolve(String.format("%s%08d%s", PREFIJO, numero, EXTENSION));
+    }
+
+    private void crearSegmento(int numero) throws IOException {
+        segmento = canales.abrir(rutaSegmento(numero), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer cabecera = ByteBuffer.allocate(TAMANO_CABECERA);
+        cabecera.putInt(MAGICO).putShort(VERSION).putShort((short) preguntas).putShort((short) escala)
+                .putShort((short) 0).putInt(0).flip();
+        while (cabecera.hasRemaining()) segmento.write(cabecera);
+        segmento.force(true);
+        numeroSegmento = numero;
+        registrosEnSegmento = 0;
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Recuperación
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Método para volver a cargar en el almacén todas las evaluaciones guardadas.
+     * Los contadores se acumulan primero en arreglos simples por profesor y día y se
+     * suman al almacén una sola vez al final.
+     */
+    private void recuperar() throws IOException {
+        long inicio = System.nanoTime();
+        int primerSegmento = InstantaneaAlmacen.cargarUltima(carpeta, almacen);
+        compactar(primerSegmento); // Por si la última compactación no llegó a terminar
+        List<Integer> numeros = segmentosExistentes();
+        Map<Long, long[]> contadores = new HashMap<>();
+        long total = 0;
+
+        for (int i = 0; i < numeros.size(); i++) {
+            int numero = numeros.get(i);
+            boolean ultimo = i == numeros.size() - 1;
+            Path ruta = rutaSegmento(numero);
+            try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long validos = leerSegmento(ruta, canal, contadores, !ultimo);
+                long finValido = validos < 0 ? 0 : TAMANO_CABECERA + validos * tamanoRegistro;
+                // Solo el último segmento puede haber quedado a medio escribir
+                if (ultimo && canal.size() > finValido) {
+                    System.err.println("Registro " + ruta.getFileName()
+                            + ": se descartan " + (canal.size() - finValido) + " bytes incompletos o dañados");
+                    canal.truncate(finValido);
+                    canal.force(true);
+                }
+                if (validos > 0) total += validos;
+                if (ultimo && validos >= 0) {
+                    numeroSegmento = numero;
+                    registrosEnSegmento = validos;
+                }
+            }
+        }
+
+        for (Map.Entry<Long, long[]> e : contadores.entrySet()) sumarAlAlmacen(e.getKey(), e.getValue());
+
+        // Seguimos escribiendo en el último segmento, o creamos uno nuevo
+        if (numeroSegmento > 0 && registrosEnSegmento < registrosPorSegmento) {
+            segmento = canales.abrir(rutaSegmento(numeroSegmento), StandardOpenOption.WRITE);
+            segmento.position(TAMANO_CABECERA + registrosEnSegmento * tamanoRegistro);
+        } else {
+            int siguiente = numeros.isEmpty() ? primerSegmento : numeros.get(numeros.size() - 1) + 1;
+            if (!numeros.isEmpty() && numeroSegmento == 0) {
+                // El último segmento no tenía cabecera válida: se reemplaza
+                siguiente = numeros.get(numeros.size() - 1);
+                Files.delete(rutaSegmento(siguiente));
+            }
+            crearSegmento(siguiente);
+        }
+
+        registrosDesdeInstantanea = total;
+        if (primerSegmento > 1 || total > 0) {
+            System.out.printf("Se recuperaron las evaluaciones (%s%d del registro) en %d ms%n",
+                    primerSegmento > 1 ? "instantánea + " : "", total, (System.nanoTime() - inicio) / 1_000_000);
+        }
+    }
+
+    /**
+     * Suma al almacén los contadores de un profesor y día (histograma seguido de la cantidad)
+     */
+    private void sumarAlAlmacen(long clave, long[] contador) {
+        almacen.sumar(AlmacenEvaluaciones.profesorDe(clave), AlmacenEvaluaciones.diaDe(clave),
+                Arrays.copyOf(contador, contador.length - 1), contador[contador.length - 1]);
+    }
+
+    /**
+     * Método para comprobar que un segmento mapeado es de este formato y de este cuestionario
+     * (mismas preguntas y escala)
+     */
+    boolean cabeceraCompatible(ByteBuffer datos) {
+        return datos.getInt(0) == MAGICO && datos.getShort(4) == VERSION
+                && datos.getShort(6) == preguntas && datos.getShort(8) == escala;
+    }
+
+    private void validarCabecera(ByteBuffer datos, Path ruta) throws IOException {
+        if (!cabeceraCompatible(datos)) {
+            throw new IOException("El segmento " + ruta.getFileName() + " no tiene un formato compatible (versión "
+                    + VERSION + ", " + preguntas + " preguntas, escala " + escala + ")");
+        }
+    }
+
+    /**
+     * Método para comprobar un registro: CRC correcto y todas las puntuaciones entre 1 y escala
+     */
+    boolean registroValido(ByteBuffer datos, int pos, CRC32 crc) {
+        ByteBuffer vista = datos.duplicate();
+        vista.limit(pos + tamanoRegistro - 4).position(pos);
+        crc.reset();
+        crc.update(vista);
+        if ((int) crc.getValue() != datos.getInt(pos + tamanoRegistro - 4)) return false;
+        for (int pregunta = 0; pregunta < preguntas; pregunta++) {
+            byte puntuacion = datos.get(pos + 12 + pregunta);
+            if (puntuacion < 1 || puntuacion > escala) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Recorre un segmento mapeado en memoria y acumula sus registros válidos por profesor y día.
+     * Con saltarDanados (segmentos cerrados) los registros dañados se saltean; si no, la lectura
+     * termina en el primero. Devuelve la cantidad de registros válidos, o -1 si la cabecera no
+     * es válida.
+     */
+    private long leerSegmento(Path ruta, FileChannel canal, Map<Long, long[]> contadores, boolean saltarDanados)
+            throws IOException {
+        long tamano = canal.size();
+        if (tamano < TAMANO_CABECERA) {
+            if (saltarDanados) System.err.println("Registro " + ruta.getFileName() + ": segmento sin cabecera, se omite");
+            return -1;
+        }
+        MappedByteBuffer datos = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamano);
+        validarCabecera(datos, ruta);
+
+        long registros = 0;
+        long danados = 0;
+        int celdas = almacen.cuestionario.celdas();
+        long ultimaClave = Long.MIN_VALUE;
+        long[] contador = null;
+        for (int pos = TAMANO_CABECERA; pos + tamanoRegistro <= tamano; pos += tamanoRegistro) {
+            if (!registroValido(datos, pos, crc)) {
+                if (!saltarDanados) break;
+                danados++;
+                continue;
+            }
+            long clave = AlmacenEvaluaciones.clave(datos.getInt(pos), AlmacenEvaluaciones.dia(datos.getLong(pos + 4)));
+            if (clave != ultimaClave) {
+                contador = contadores.computeIfAbsent(clave, c -> new long[celdas + 1]);
+                ultimaClave = clave;
+            }
+            int base = pos + 12;
+            for (int pregunta = 0; pregunta < preguntas; pregunta++) {
+                contador[pregunta * escala + datos.get(base + pregunta) - 1]++;
+            }
+            contador[celdas]++;
+            registros++;
+        }
+        if (saltarDanados && (danados > 0 || (tamano - TAMANO_CABECERA) % tamanoRegistro != 0)) {
+            System.err.println("Registro " + ruta.getFileName() + ": se omiten " + danados
+                    + " registros dañados y " + (tamano - TAMANO_CABECERA) % tamanoRegistro + " bytes sobrantes");
+        }
+        return registros;
+    }
+
+    /**
+     * Método para listar en orden los segmentos con evaluaciones individuales: primero los
+     * archivados y después los de la carpeta del registro (el último es el activo).
+     * Las evaluaciones de segmentos ya borrados o de importaciones solo están en los contadores.
+     */
+    List<Path> segmentos() throws IOException {
+        List<Path> rutas = new ArrayList<>();
+        Path archivo = carpeta.resolve(CARPETA_ARCHIVO);
+        if (Files.isDirectory(archivo)) {
+            try (Stream<Path> archivos = Files.list(archivo)) {
+                archivos.filter(p -> p.getFileName().toString().startsWith(PREFIJO)
+                                && p.getFileName().toString().endsWith(EXTENSION))
+                        .sorted()
+                        .forEach(rutas::add);
+            }
+        }
+        for (int numero : segmentosExistentes()) rutas.add(rutaSegmento(numero));
+        return rutas;
+    }
+
+    /**
+     * Método para abrir un segmento para lectura. Si mientras tanto la compactación lo movió
+     * al archivo, se abre desde allí.
+     */
+    FileChannel abrirSegmento(Path ruta) throws IOException {
+        try {
+            return FileChannel.open(ruta, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return FileChannel.open(carpeta.resolve(CARPETA_ARCHIVO).resolve(ruta.getFileName()), StandardOpenOption.READ);
+        }
+    }
+
+    private List<Integer> segmentosExistentes() throws IOException {
+        List<Integer> numeros = new ArrayList<>();
+        try (Stream<Path> archivos = Files.list(carpeta)) {
+            archivos.map(p -> p.getFileName().toString())
+                    .filter(n -> n.startsWith(PREFIJO) && n.endsWith(EXTENSION))
+                    .forEach(n -> {
+                        try {
+                            numeros.add(Integer.parseInt(n.substring(PREFIJO.length(), n.length() - EXTENSION.length())));
+                        } catch (NumberFormatException e) {
+                            // Archivo ajeno al registro: se ignora
+                        }
+                    });
+        }
+        Collections.sort(numeros);
+        return numeros;
+    }
+}
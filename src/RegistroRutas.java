@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.util.function.Predicate;
+
+/**
+ * Registro de las rutas del servidor web y de quién las atiende.
+ *
+ * Cada ruta se registra con su patrón (exacta, de prefijo "/img/*" o con un segmento "{n}", ver
+ * TablaRutas) y un Manejador por método HTTP. Encontrar el manejador de una solicitud cuesta
+ * un paso por byte del camino más un recorrido de los pocos métodos de su ruta, así que
+ * agregar rutas no hace más lento el despacho de las demás.
+ *
+ * Un manejador asíncrono hace trabajo proporcional a los datos (por ejemplo, recorrer todos
+ * los profesores). En el modo NIO se ejecuta en un pool aparte para no detener el hilo del
+ * Selector, y su respuesta se envía cuando está lista (ver ServidorNio). Si el trabajo solo es
+ * caro a veces (por ejemplo, cuando la página no está en caché), una condición decide por
+ * solicitud si va al pool o se atiende en el Selector. En el modo por hilos
+ * la conexión ya tiene su propio hilo y todos los manejadores se ejecutan en él.
+ */
+final class RegistroRutas {
+    private final TablaRutas<Ruta> tabla = new TablaRutas<>();
+    private final Destino noPermitido;
+    private final Destino siNoHay;
+
+    /**
+     * Atiende las solicitudes de una ruta. La respuesta se pasa tal cual a la conexión: sus
+     * buffers se escriben en el socket sin copiarlos.
+     */
+    interface Manejador {
+        RespuestaHttp atender(SolicitudHttp solicitud, boolean mantener) throws IOException;
+    }
+
+    /**
+     * Manejador elegido para una solicitud
+     */
+    static final class Destino {
+        final String metodo;
+        final Manejador manejador;
+        final boolean asincrono;
+        private final Predicate<SolicitudHttp> aparte; // null: siempre que sea asíncrono
+        private Destino siguiente; // Otro método de la misma ruta
+
+        private Destino(String metodo, Manejador manejador, boolean asincrono, Predicate<SolicitudHttp> aparte) {
+            this.metodo = metodo;
+            this.manejador = manejador;
+            this.asincrono = asincrono;
+            this.aparte = aparte;
+        }
+
+        /** Indica si esta solicitud se atiende en el pool (en el modo NIO) */
+        boolean aparte(SolicitudHttp solicitud) {
+            return asincrono && (aparte == null || aparte.test(solicitud));
+        }
+
+        RespuestaHttp atender(SolicitudHttp solicitud, boolean mantener) throws IOException {
+            return manejador.atender(solicitud, mantener);
+        }
+    }
+
+    private static final class Ruta {
+        Destino destinos;
+    }
+
+    /**
+     * noPermitido responde cuando la ruta existe pero no para ese método; siNoHay, cuando
+     * ninguna ruta coincide con el camino
+     */
+    RegistroRutas(Manejador noPermitido, Manejador siNoHay) {
+        this.noPermitido = new Destino(null, noPermitido, false, null);
+        this.siNoHay = new Destino(null, siNoHay, false, null);
+    }
+
+    /**
+     * Método para registrar el manejador de un método en una ruta (ver TablaRutas para los patrones)
+     */
+    void agregar(String metodo, String patron, Manejador manejador) {
+        agregar(metodo, patron, manejador, false, null, false);
+    }
+
+    /**
+     * Igual que agregar, para manejadores que hacen trabajo proporcional a los datos
+     */
+    void agregarAsincrona(String metodo, String patron, Manejador manejador) {
+        agregar(metodo, patron, manejador, true, null, false);
+    }
+
+    /**
+     * Igual que agregarAsincrona, pero solo van al pool las solicitudes para las que aparte
+     * devuelve true (se evalúa en el hilo del Selector, así que debe ser inmediata)
+     */
+    void agregarAsincronaSi(String metodo, String patron, Predicate<SolicitudHttp> aparte, Manejador manejador) {
+        agregar(metodo, patron, manejador, true, aparte, false);
+    }
+
+    /**
+     * Método para registrar un camino exacto sin interpretarlo como patrón (por ejemplo, un archivo)
+     */
+    void agregarExacta(String metodo, String camino, Manejador manejador) {
+        agregar(metodo, camino, manejador, false, null, true);
+    }
+
+    /**
+     * Método para elegir el manejador de una solicitud (nunca null)
+     */
+    Destino buscar(SolicitudHttp solicitud) {
+        Ruta ruta = tabla.buscar(solicitud);
+        if (ruta == null) return siNoHay;
+        for (Destino d = ruta.destinos; d != null; d = d.siguiente) {
+            if (d.metodo.equals(solicitud.metodo)) return d;
+        }
+        return noPermitido;
+    }
+
+    /**
+     * Las rutas se registran al iniciar, antes de atender solicitudes
+     */
+    private void agregar(String metodo, String patron, Manejador manejador, boolean asincrono,
+                         Predicate<SolicitudHttp> aparte, boolean exacta) {
+        Ruta ruta = tabla.registrada(patron, exacta);
+        if (ruta == null) {
+            ruta = new Ruta();
+            if (exacta) tabla.agregarExacta(patron, ruta);
+            else tabla.agregar(patron, ruta);
+        }
+        for (Destino d = ruta.destinos; d != null; d = d.siguiente) {
+            if (d.metodo.equals(metodo)) throw new IllegalArgumentException(metodo + " " + patron + " ya está registrada");
+        }
+        Destino destino = new Destino(metodo, manejador, asincrono, aparte);
+        destino.siguiente = ruta.destinos;
+        ruta.destinos = destino;
+    }
+}
@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * Respuesta HTTP lista para enviar: la cabecera y el cuerpo ya codificados en bytes.
+ * Se guarda como un arreglo de ByteBuffer para que el modo NIO pueda enviarla con una
+ * escritura agrupada (gathering write) y el modo por hilos con un OutputStream.
+ *
+ * Los archivos grandes no se cargan en memoria: la respuesta lleva la ruta y el largo, y el
+ * modo NIO los envía con FileChannel.transferTo (sendfile, sin pasar por el espacio de usuario).
+ *
+ * Las exportaciones tampoco: llevan un Generador que produce el cuerpo de a trozos a medida
+ * que el socket los acepta, y se envían con Transfer-Encoding: chunked.
+ *
+ * Los resultados en vivo llevan una Suscripcion (ver DifusorResultados): después de la
+ * cabecera se envían sus eventos a medida que llegan, hasta que se cierra la conexión. Solo
+ * el modo NIO las envía (ver ServidorNio); escribir() no las acepta.
+ */
+final class RespuestaHttp {
+    final ByteBuffer[] partes;
+    final boolean mantener; // false si hay que cerrar la conexión después de enviarla
+    final Path archivo;     // Se envía después de las partes (null si no hay)
+    final long largoArchivo;
+    final Generador generador; // Cuerpo por trozos, después de las partes (null si no hay)
+    final DifusorResultados.Suscripcion suscripcion; // Eventos en vivo, después de las partes (null si no hay)
+
+    private static final ThreadLocal<byte[]> TRAMO = ThreadLocal.withInitial(() -> new byte[8192]);
+    static final int TAMANO_TROZO = 64 * 1024;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    /**
+     * Productor del cuerpo de una respuesta que no se arma completa en memoria
+     */
+    interface Generador {
+        /** Escribe en destino lo que quepa; devuelve false cuando ya no queda nada por escribir */
+        boolean llenar(ByteBuffer destino) throws IOException;
+
+        /** Libera lo que tenga abierto (se llama también si el cliente se desconecta antes) */
+        default void cerrar() {}
+    }
+
+    RespuestaHttp(boolean mantener, ByteBuffer... partes) {
+        this(mantener, null, 0, partes);
+    }
+
+    RespuestaHttp(boolean mantener, Path archivo, long largoArchivo, ByteBuffer... partes) {
+        this.mantener = mantener;
+        this.partes = partes;
+        this.archivo = archivo;
+        this.largoArchivo = largoArchivo;
+        this.generador = null;
+        this.suscripcion = null;
+    }
+
+    RespuestaHttp(boolean mantener, Generador generador, ByteBuffer... partes) {
+        this.mantener = mantener;
+        this.partes = partes;
+        this.archivo = null;
+        this.largoArchivo = 0;
+        this.generador = generador;
+        this.suscripcion = null;
+    }
+
+    RespuestaHttp(DifusorResultados.Suscripcion suscripcion, ByteBuffer... partes) {
+        this.mantener = false; // El cuerpo termina cuando se cierra la conexión
+        this.partes = partes;
+        this.archivo = null;
+        this.largoArchivo = 0;
+        this.generador = null;
+        this.suscripcion = suscripcion;
+    }
+
+    /**
+     * Método para preparar en trozo el siguiente trozo "chunked" del generador (tamaño en
+     * hexadecimal, datos, CRLF) y, si era el último, la marca de fin. El trozo queda listo
+     * para leer. Devuelve false si ya no quedan trozos por pedir.
+     */
+    static boolean siguienteTrozo(Generador generador, ByteBuffer trozo) throws IOException {
+        trozo.clear().position(10).limit(trozo.capacity() - 2 - 5);
+        boolean quedan = generador.llenar(trozo);
+        int largo = trozo.position() - 10;
+        trozo.limit(trozo.capacity());
+        int inicio = 10;
+        if (largo > 0) {
+            inicio = 0;
+            for (int i = 7; i >= 0; i--) trozo.put(7 - i, HEX[(largo >>> (i * 4)) & 0xf]);
+            trozo.put(8, (byte) '\r').put(9, (byte) '\n');
+            trozo.put((byte) '\r').put((byte) '\n');
+        }
+        if (!quedan) trozo.put((byte) '0').put((byte) '\r').put((byte) '\n').put((byte) '\r').put((byte) '\n');
+        trozo.flip().position(inicio);
+        return quedan;
+    }
+
+    /**
+     * Método para escribir la respuesta en un socket bloqueante
+     */
+    void escribir(OutputStream out) throws IOException {
+        if (suscripcion != null) {
+            // Retendría el hilo con escrituras bloqueantes mientras dure la suscripción
+            suscripcion.cerrar();
+            throw new IllegalStateException("Los resultados en vivo solo se envían en el modo NIO");
+        }
+        for (ByteBuffer parte : partes) {
+            if (parte.hasArray()) {
+                out.write(parte.array(), parte.arrayOffset() + parte.position(), parte.remaining());
+            } else {
+                // Buffer fuera del heap (archivo web cargado): se copia por tramos con un arreglo del hilo
+                byte[] tramo = TRAMO.get();
+                ByteBuffer vista = parte.duplicate();
+                while (vista.hasRemaining()) {
+                    int n = Math.min(tramo.length, vista.remaining());
+                    vista.get(tramo, 0, n);
+                    out.write(tramo, 0, n);
+                }
+            }
+        }
+        if (archivo != null) {
+            try (FileChannel canal = FileChannel.open(archivo)) {
+                long enviados = 0;
+                while (enviados < largoArchivo) {
+                    long n = canal.transferTo(enviados, largoArchivo - enviados, Channels.newChannel(out));
+                    if (n <= 0) throw new IOException("El archivo " + archivo + " cambió mientras se enviaba");
+                    enviados += n;
+                }
+            }
+        }
+        if (generador != null) {
+            try {
+                ByteBuffer trozo = ByteBuffer.allocate(TAMANO_TROZO);
+                boolean quedan = true;
+                while (quedan) {
+                    quedan = siguienteTrozo(generador, trozo);
+                    out.write(trozo.array(), trozo.position(), trozo.remaining());
+                }
+            } finally {
+                generador.cerrar();
+            }
+        }
+    }
+}
@@ -0,0 +1,365 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Tabla de respuestas que no dependen de las evaluaciones: la página principal, las páginas
+ * de error y todos los archivos de la carpeta web. Cada respuesta (línea de estado, cabeceras
+ * y cuerpo) se arma y codifica una sola vez, así servirla es solo escribir bytes.
+ *
+ * Los archivos hasta el umbral configurado se copian a un buffer fuera del heap (se envían
+ * sin más copias); los mayores no se cargan y se envían directamente desde el disco con
+ * FileChannel.transferTo. No se sirven mapeados: si un archivo mapeado se trunca en el disco
+ * antes de recargarlo, leerlo hace fallar (SIGBUS) al hilo que lo envía. Un hilo con
+ * WatchService vigila la carpeta web y vuelve a cargar un archivo cuando cambia.
+ *
+ * Cada recurso servido por ruta lleva ETag (hash del contenido, calculado al cargarlo),
+ * Last-Modified y el Cache-Control configurado para su prefijo, y responde 304 a las
+ * solicitudes condicionales cuya copia sigue vigente. Los recursos de texto (CSS, HTML, SVG)
+ * se guardan además comprimidos en gzip al cargarlos, así servirlos comprimidos no cuesta nada.
+ */
+final class RespuestasEstaticas {
+    private static final DateTimeFormatter FECHA_HTTP = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    private final Path carpeta;
+    private final int umbralMapeo;
+    private final List<String[]> reglasCache = new ArrayList<>(); // {prefijo, Cache-Control}, el prefijo más largo primero
+    private final ConcurrentHashMap<String, Recurso> tabla = new ConcurrentHashMap<>();
+
+    /**
+     * Respuestas armadas de un recurso. Los arreglos se indexan como en
+     * EvaluacionServidor.variante(): codificación * 2 + (mantener ? 0 : 1). Solo se guardan la
+     * versión sin comprimir y la gzip (todos los navegadores aceptan gzip); noModificadas tiene
+     * las respuestas 304 para cuando el navegador ya tiene la versión vigente.
+     */
+    private static final class Recurso {
+        final String etag;      // Hash del contenido entre comillas (null: sin validación, p. ej. páginas de error)
+        final String etagGzip;  // ETag de la variante gzip (null si no hay)
+        final long modificado;  // Última modificación, en segundos desde 1970
+        final RespuestaHttp[] completas;
+        final RespuestaHttp[] noModificadas;
+
+        Recurso(String etag, String etagGzip, long modificado, RespuestaHttp[] completas, RespuestaHttp[] noModificadas) {
+            this.etag = etag;
+            this.etagGzip = etagGzip;
+            this.modificado = modificado;
+            this.completas = completas;
+            this.noModificadas = noModificadas;
+        }
+    }
+
+    /**
+     * reglasCache tiene la forma "prefijo=valor;prefijo=valor", por ejemplo
+     * "/img/=public, max-age=86400;/=no-cache"
+     */
+    private RespuestasEstaticas(Path carpeta, int umbralMapeo, String reglasCache) {
+        this.carpeta = carpeta;
+        this.umbralMapeo = umbralMapeo;
+        for (String regla : reglasCache.split(";")) {
+            int igual = regla.indexOf('=');
+            if (igual <= 0) continue;
+            this.reglasCache.add(new String[]{regla.substring(0, igual).trim(), regla.substring(igual + 1).trim()});
+        }
+        this.reglasCache.sort((a, b) -> b[0].length() - a[0].length());
+    }
+
+    /**
+     * Método para crear la tabla con todos los archivos de la carpeta (y sus subcarpetas)
+     */
+    static RespuestasEstaticas cargar(Path carpeta, int umbralMapeo, String reglasCache) throws IOException {
+        RespuestasEstaticas respuestas = new RespuestasEstaticas(carpeta, umbralMapeo, reglasCache);
+        try (Stream<Path> archivos = Files.walk(carpeta)) {
+            for (Path archivo : (Iterable<Path>) archivos::iterator) {
+                if (Files.isRegularFile(archivo)) respuestas.cargarArchivo(archivo);
+            }
+        }
+        return respuestas;
+    }
+
+    /**
+     * Método para agregar una respuesta fija. Las claves que empiezan con "/" se sirven en esa
+     * ruta (con ETag y Last-Modified); las demás (por ejemplo "404") solo se obtienen por
+     * nombre desde el código.
+     */
+    void registrar(String clave, String estado, String tipo, byte[] cuerpo) {
+        ByteBuffer buf = ByteBuffer.wrap(cuerpo);
+        String etag = null;
+        if (clave.startsWith("/")) {
+            MessageDigest hash = sha256();
+            hash.update(buf.duplicate());
+            etag = etag(hash);
+        }
+        try {
+            tabla.put(clave, crearRecurso(clave, estado, tipo, buf, null, cuerpo.length, etag, System.currentTimeMillis() / 1000));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // No ocurre: el cuerpo ya está en memoria
+        }
+    }
+
+    /**
+     * Método para listar las rutas servidas (las claves que empiezan con "/") en este momento
+     */
+    List<String> rutas() {
+        List<String> rutas = new ArrayList<>();
+        for (String clave : tabla.keySet()) if (clave.startsWith("/")) rutas.add(clave);
+        return rutas;
+    }
+
+    /**
+     * Método para obtener la respuesta de una ruta (null si no está en la tabla)
+     */
+    RespuestaHttp obtener(String clave, boolean mantener) {
+        return obtener(clave, null, mantener);
+    }
+
+    /**
+     * Igual que obtener(clave, mantener), pero responde 304 Not Modified si la solicitud trae
+     * If-None-Match o If-Modified-Since y la copia del navegador sigue vigente
+     */
+    RespuestaHttp obtener(String clave, SolicitudHttp solicitud, boolean mantener) {
+        Recurso recurso = tabla.get(clave);
+        if (recurso == null) return null;
+        int codificacion = recurso.etagGzip != null && Compresion.elegir(solicitud) == Compresion.GZIP
+                ? Compresion.GZIP : Compresion.IDENTIDAD;
+        if (solicitud != null && recurso.etag != null && noModificado(recurso, solicitud)) {
+            return EvaluacionServidor.variante(recurso.noModificadas, codificacion, mantener);
+        }
+        return EvaluacionServidor.variante(recurso.completas, codificacion, mantener);
+    }
+
+    /**
+     * If-None-Match tiene prioridad sobre If-Modified-Since (RFC 7232, 6)
+     */
+    private static boolean noModificado(Recurso recurso, SolicitudHttp solicitud) {
+        String ifNoneMatch = solicitud.cabecera("if-none-match");
+        if (ifNoneMatch != null) {
+            for (String etiqueta : ifNoneMatch.split(",")) {
+                etiqueta = etiqueta.trim();
+                if (etiqueta.startsWith("W/")) etiqueta = etiqueta.substring(2);
+                if (etiqueta.equals("*") || etiqueta.equals(recurso.etag) || etiqueta.equals(recurso.etagGzip)) return true;
+            }
+            return false;
+        }
+        String ifModifiedSince = solicitud.cabecera("if-modified-since");
+        if (ifModifiedSince != null) {
+            try {
+                return recurso.modificado <= ZonedDateTime.parse(ifModifiedSince, FECHA_HTTP).toEpochSecond();
+            } catch (DateTimeParseException e) {
+                return false; // Fecha inválida: se ignora la cabecera
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Método para armar las respuestas de un recurso. Si archivo no es null el cuerpo se envía
+     * desde el disco; si no, cuerpo tiene el contenido completo. Los recursos de texto servidos
+     * por ruta se comprimen aquí, una sola vez, y se guardan también en gzip.
+     */
+    private Recurso crearRecurso(String clave, String estado, String tipo, ByteBuffer cuerpo,
+                                 Path archivo, long largo, String etag, long modificado) throws IOException {
+        String extras = "";
+        byte[] gzip = null;
+        String etagGzip = null;
+        if (etag != null) {
+            if (Compresion.esComprimible(tipo) && largo >= Compresion.MINIMO && largo <= Integer.MAX_VALUE) {
+                byte[] contenido;
+                if (archivo != null) {
+                    contenido = Files.readAllBytes(archivo);
+                } else {
+                    contenido = new byte[cuerpo.remaining()];
+                    cuerpo.duplicate().get(contenido);
+                }
+                byte[][] comprimidos = Compresion.comprimir(contenido, 0, contenido.length);
+                if (comprimidos != null) {
+                    gzip = comprimidos[0];
+                    etagGzip = etag.substring(0, etag.length() - 1) + "-gz\"";
+                    extras += "Vary: Accept-Encoding\r\n";
+                }
+            }
+            extras += "Last-Modified: " + FECHA_HTTP.format(Instant.ofEpochSecond(modificado)) + "\r\n";
+            String cacheControl = cacheControl(clave);
+            if (cacheControl != null) extras += "Cache-Control: " + cacheControl + "\r\n";
+        }
+
+        int variantes = gzip != null ? 4 : 2;
+        RespuestaHttp[] completas = new RespuestaHttp[variantes];
+        RespuestaHttp[] noModificadas = new RespuestaHttp[variantes];
+        for (int i = 0; i < variantes; i++) {
+            boolean mantener = i % 2 == 0;
+            boolean comprimida = i >= 2;
+            String validador = etag == null ? "" : "ETag: " + (comprimida ? etagGzip : etag) + "\r\n";
+            if (comprimida) {
+                completas[i] = new RespuestaHttp(mantener, EvaluacionServidor.cabecera(estado, tipo, gzip.length,
+                        validador + extras + "Content-Encoding: gzip\r\n", mantener), ByteBuffer.wrap(gzip));
+            } else {
+                ByteBuffer cabecera = EvaluacionServidor.cabecera(estado, tipo, largo, validador + extras, mantener);
+                completas[i] = archivo != null
+                        ? new RespuestaHttp(mantener, archivo, largo, cabecera)
+                        : new RespuestaHttp(mantener, cabecera, cuerpo);
+            }
+            if (etag != null) {
+                noModificadas[i] = new RespuestaHttp(mantener,
+                        EvaluacionServidor.cabecera("304 Not Modified", null, -1, validador + extras, mantener));
+            }
+        }
+        return new Recurso(etag, etagGzip, modificado, completas, noModificadas);
+    }
+
+    private String cacheControl(String ruta) {
+        for (String[] regla : reglasCache) {
+            if (ruta.startsWith(regla[0])) return regla[1];
+        }
+        return null;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Toda JVM incluye SHA-256
+        }
+    }
+
+    /**
+     * ETag fuerte a partir del hash del contenido (primeros 8 bytes en hexadecimal)
+     */
+    private static String etag(MessageDigest hash) {
+        byte[] resumen = hash.digest();
+        StringBuilder etag = new StringBuilder("\"");
+        for (int i = 0; i < 8; i++) etag.append(String.format("%02x", resumen[i]));
+        return etag.append('"').toString();
+    }
+
+    /**
+     * Método para iniciar el hilo que recarga los archivos modificados
+     */
+    void vigilar() throws IOException {
+        WatchService vigilante = carpeta.getFileSystem().newWatchService();
+        registrarCarpetas(vigilante, carpeta);
+        Thread hilo = new Thread(() -> procesarCambios(vigilante), "vigilante-web");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    private void procesarCambios(WatchService vigilante) {
+        while (true) {
+            WatchKey clave;
+            try {
+                clave = vigilante.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Path directorio = (Path) clave.watchable();
+            for (WatchEvent<?> evento : clave.pollEvents()) {
+                if (evento.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    recargarTodo();
+                    continue;
+                }
+                Path archivo = directorio.resolve((Path) evento.context());
+                try {
+                    if (evento.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                        // Si era una carpeta se quitan también los archivos que contenía
+                        String ruta = rutaWeb(archivo);
+                        tabla.keySet().removeIf(r -> r.equals(ruta) || r.startsWith(ruta + "/"));
+                    } else if (Files.isDirectory(archivo)) {
+                        registrarCarpetas(vigilante, archivo);
+                        try (Stream<Path> nuevos = Files.walk(archivo)) {
+                            for (Path nuevo : (Iterable<Path>) nuevos::iterator) {
+                                if (Files.isRegularFile(nuevo)) cargarArchivo(nuevo);
+                            }
+                        }
+                    } else if (Files.isRegularFile(archivo)) {
+                        cargarArchivo(archivo);
+                    }
+                } catch (IOException e) {
+                    System.err.println("No se pudo recargar " + archivo + ": " + e.getMessage());
+                }
+            }
+            clave.reset();
+        }
+    }
+
+    private void recargarTodo() {
+        try (Stream<Path> archivos = Files.walk(carpeta)) {
+            for (Path archivo : (Iterable<Path>) archivos::iterator) {
+                if (Files.isRegularFile(archivo)) cargarArchivo(archivo);
+            }
+        } catch (IOException e) {
+            System.err.println("No se pudo recargar la carpeta web: " + e.getMessage());
+        }
+    }
+
+    private void registrarCarpetas(WatchService vigilante, Path raiz) throws IOException {
+        try (Stream<Path> carpetas = Files.walk(raiz)) {
+            for (Path c : (Iterable<Path>) carpetas::iterator) {
+                if (Files.isDirectory(c)) {
+                    c.register(vigilante, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                }
+            }
+        }
+    }
+
+    private void cargarArchivo(Path archivo) throws IOException {
+        String ruta = rutaWeb(archivo);
+        String tipo = tipoContenido(ruta);
+        long modificado = Files.getLastModifiedTime(archivo).toMillis() / 1000;
+        MessageDigest hash = sha256();
+        try (FileChannel canal = FileChannel.open(archivo)) {
+            long largo = canal.size();
+            if (largo <= umbralMapeo) {
+                // Copia propia: no depende de que el archivo siga igual (si se achicó mientras tanto, queda más corta)
+                ByteBuffer cuerpo = ByteBuffer.allocateDirect((int) largo);
+                while (cuerpo.hasRemaining() && canal.read(cuerpo) >= 0) {}
+                cuerpo.flip();
+                hash.update(cuerpo.duplicate());
+                tabla.put(ruta, crearRecurso(ruta, "200 OK", tipo, cuerpo, null, cuerpo.remaining(), etag(hash), modificado));
+            } else {
+                // El hash se calcula una sola vez al cargar, leyendo el archivo por tramos
+                ByteBuffer tramo = ByteBuffer.allocate(64 * 1024);
+                while (canal.read(tramo) > 0) {
+                    tramo.flip();
+                    hash.update(tramo);
+                    tramo.clear();
+                }
+                tabla.put(ruta, crearRecurso(ruta, "200 OK", tipo, null, archivo, largo, etag(hash), modificado));
+            }
+        }
+    }
+
+    /**
+     * Ruta con la que se pide un archivo: web/img/logo.png -> /img/logo.png
+     */
+    private String rutaWeb(Path archivo) {
+        StringBuilder ruta = new StringBuilder();
+        for (Path parte : carpeta.relativize(archivo)) ruta.append('/').append(parte);
+        return ruta.toString();
+    }
+
+    /**
+     * Método para determinar el tipo de contenido según la extensión
+     */
+    static String tipoContenido(String ruta) {
+        if (ruta.endsWith(".css")) return "text/css";
+        if (ruta.endsWith(".svg")) return "image/svg+xml";
+        if (ruta.endsWith(".jfif") || ruta.endsWith(".jpg")) return "image/jpeg";
+        if (ruta.endsWith(".png")) return "image/png";
+        if (ruta.endsWith(".html")) return "text/html";
+        if (ruta.endsWith(".js")) return "text/javascript";
+        return "application/octet-stream";
+    }
+}
@@ -0,0 +1,494 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Servidor web no bloqueante: un único hilo con un Selector atiende todas las conexiones.
+ * Cada conexión solo ocupa sus buffers, así que miles de pestañas abiertas con keep-alive
+ * no necesitan un hilo cada una. Se activa con --modo=nio.
+ *
+ * Las conexiones suscritas a resultados en vivo también las atiende este hilo: el difusor
+ * avisa que hay eventos (ver DifusorResultados.Suscripcion.alRecibir) y el bucle los pasa a
+ * la salida de la conexión como vistas del mismo buffer compartido, sin copiarlos.
+ *
+ * Las rutas asíncronas (ver RegistroRutas) se atienden en un pool aparte; mientras tanto la
+ * conexión no procesa más solicitudes, y cuando la respuesta está lista el pool la deja en
+ * una cola que este hilo pasa a la salida, así las respuestas salen en orden.
+ *
+ * Los cuerpos que se generan de a trozos (exportaciones) también se llenan en el pool: generar
+ * un trozo puede leer segmentos archivados del disco. Mientras se llena, la conexión no pide
+ * escribir, y el trozo listo vuelve por la misma cola.
+ */
+final class ServidorNio {
+    private static final int TAMANO_LECTURA = 8192;
+    private static final int CAPACIDAD_MAXIMA = SolicitudHttp.MAX_CABECERAS + SolicitudHttp.MAX_CUERPO;
+
+    private final ConfiguracionServidor config;
+    private final RegistroRutas rutas;
+    private final ExecutorService ejecutor; // Para las rutas asíncronas
+    private final Queue<SelectionKey> conEventos = new ConcurrentLinkedQueue<>(); // Avisadas por el difusor
+    private final Queue<Terminada> terminadas = new ConcurrentLinkedQueue<>(); // Respuestas y trozos listos
+
+    /**
+     * Estado de una conexión: lo leído sin procesar y las respuestas pendientes de enviar
+     */
+    private static final class Conexion {
+        ByteBuffer entrada = ByteBuffer.allocate(TAMANO_LECTURA);  // Modo escritura: se llena desde el canal
+        final ArrayDeque<Object> salida = new ArrayDeque<>(); // ByteBuffer, Transferencia o Flujo, en orden
+        int atendidas;
+        boolean cerrarAlTerminar;
+        DifusorResultados.Suscripcion suscripcion; // Conexión de resultados en vivo (o null)
+        boolean esperando; // Una ruta asíncrona está preparando la respuesta
+        long ultimaActividad = System.currentTimeMillis();
+        long ultimoEnvio; // Último envío de bytes, o cuando empezó a haber salida pendiente
+    }
+
+    /**
+     * Respuesta de una ruta asíncrona para una conexión (null si el manejador falló), o trozo
+     * de un Flujo ya llenado en el pool
+     */
+    private static final class Terminada {
+        final SelectionKey clave;
+        final RespuestaHttp respuesta;
+        final Flujo flujo;
+        final boolean quedan; // Del flujo: false si era el último trozo
+        final boolean fallo;  // Del flujo: el generador lanzó una excepción
+
+        Terminada(SelectionKey clave, RespuestaHttp respuesta) {
+            this(clave, respuesta, null, false, false);
+        }
+
+        Terminada(SelectionKey clave, Flujo flujo, boolean quedan, boolean fallo) {
+            this(clave, null, flujo, quedan, fallo);
+        }
+
+        private Terminada(SelectionKey clave, RespuestaHttp respuesta, Flujo flujo, boolean quedan, boolean fallo) {
+            this.clave = clave;
+            this.respuesta = respuesta;
+            this.flujo = flujo;
+            this.quedan = quedan;
+            this.fallo = fallo;
+        }
+    }
+
+    /**
+     * Archivo pendiente de enviar con transferTo; el canal se abre al empezar a enviarlo
+     */
+    private static final class Transferencia {
+        final Path archivo;
+        final long largo;
+        FileChannel canal;
+        long enviados;
+
+        Transferencia(Path archivo, long largo) {
+            this.archivo = archivo;
+            this.largo = largo;
+        }
+
+        void cerrar() {
+            if (canal != null) {
+                try { canal.close(); } catch (IOException e) {}
+            }
+        }
+    }
+
+    /**
+     * Cuerpo que se va generando de a trozos a medida que el socket acepta datos
+     */
+    private static final class Flujo {
+        final RespuestaHttp.Generador generador;
+        final ByteBuffer trozo = ByteBuffer.allocate(RespuestaHttp.TAMANO_TROZO).limit(0);
+        boolean terminado;
+        boolean llenando;   // El pool está llenando el trozo
+        boolean descartado; // La conexión se cerró mientras se llenaba: el generador se cierra al volver
+
+        Flujo(RespuestaHttp.Generador generador) {
+            this.generador = generador;
+        }
+    }
+
+    ServidorNio(ConfiguracionServidor config, RegistroRutas rutas) {
+        this.config = config;
+        this.rutas = rutas;
+        this.ejecutor = config.crearEjecutor();
+    }
+
+    /**
+     * Bucle de eventos del servidor (no termina salvo por error de E/S)
+     */
+    void ejecutar() throws IOException {
+        try (Selector selector = Selector.open();
+             ServerSocketChannel servidor = ServerSocketChannel.open()) {
+            servidor.bind(new InetSocketAddress(config.puerto), config.backlog);
+            servidor.configureBlocking(false);
+            servidor.register(selector, SelectionKey.OP_ACCEPT);
+            System.out.println("\nServidor web (NIO) iniciado en http://localhost:" + config.puerto);
+
+            long ultimaRevision = System.currentTimeMillis();
+            while (true) {
+                selector.select(1000);
+                SelectionKey avisada;
+                while ((avisada = conEventos.poll()) != null) {
+                    try {
+                        if (avisada.isValid()) escribir(avisada);
+                    } catch (IOException | RuntimeException e) {
+                        cerrar(avisada);
+                    }
+                }
+                Terminada terminada;
+                while ((terminada = terminadas.poll()) != null) {
+                    try {
+                        if (terminada.flujo != null) trozoListo(terminada);
+                        else continuar(terminada);
+                    } catch (IOException | RuntimeException e) {
+                        cerrar(terminada.clave);
+                    }
+                }
+                Iterator<SelectionKey> claves = selector.selectedKeys().iterator();
+                while (claves.hasNext()) {
+                    SelectionKey clave = claves.next();
+                    claves.remove();
+                    try {
+                        if (!clave.isValid()) continue;
+                        if (clave.isAcceptable()) aceptar(servidor, selector);
+                        if (clave.isValid() && clave.isReadable()) leer(clave);
+                        if (clave.isValid() && clave.isWritable()) escribir(clave);
+                    } catch (IOException | RuntimeException e) {
+                        // Un error en una conexión (o en su manejador) no debe detener el bucle
+                        if (!(e instanceof IOException)) System.err.println("Error: " + e);
+                        cerrar(clave);
+                    }
+                }
+
+                // Cerramos las conexiones que superaron su tiempo de espera
+                long ahora = System.currentTimeMillis();
+                if (ahora - ultimaRevision >= 1000) {
+                    cerrarInactivas(selector, ahora);
+                    ultimaRevision = ahora;
+                }
+            }
+        }
+    }
+
+    private void aceptar(ServerSocketChannel servidor, Selector selector) throws IOException {
+        SocketChannel canal;
+        while ((canal = servidor.accept()) != null) {
+            canal.configureBlocking(false);
+            canal.setOption(java.net.StandardSocketOptions.TCP_NODELAY, true);
+            canal.register(selector, SelectionKey.OP_READ, new Conexion());
+        }
+    }
+
+    /**
+     * Método para leer del canal y procesar todas las solicitudes completas recibidas
+     */
+    private void leer(SelectionKey clave) throws IOException {
+        SocketChannel canal = (SocketChannel) clave.channel();
+        Conexion conexion = (Conexion) clave.attachment();
+
+        if (!conexion.entrada.hasRemaining()) {
+            if (conexion.entrada.capacity() >= CAPACIDAD_MAXIMA) {
+                responderError(clave, conexion, new SolicitudHttp.Invalida("431 Request Header Fields Too Large"));
+                return;
+            }
+            ByteBuffer mayor = ByteBuffer.allocate(Math.min(conexion.entrada.capacity() * 2, CAPACIDAD_MAXIMA));
+            conexion.entrada.flip();
+            mayor.put(conexion.entrada);
+            conexion.entrada = mayor;
+        }
+        int leidos = canal.read(conexion.entrada);
+        if (leidos < 0) {
+            cerrar(clave);
+            return;
+        }
+        conexion.ultimaActividad = System.currentTimeMillis();
+
+        procesar(clave, conexion);
+    }
+
+    /**
+     * Método para procesar las solicitudes completas que haya en la entrada
+     */
+    private void procesar(SelectionKey clave, Conexion conexion) throws IOException {
+        // Analizamos de forma incremental: puede haber varias solicitudes encadenadas o solo un trozo
+        conexion.entrada.flip();
+        try {
+            while (!conexion.cerrarAlTerminar && !conexion.esperando) {
+                SolicitudHttp solicitud = SolicitudHttp.analizar(conexion.entrada);
+                if (solicitud == null) break;
+                conexion.atendidas++;
+                boolean mantener = solicitud.mantenerConexion() && conexion.atendidas < config.maxSolicitudesPorConexion;
+                RegistroRutas.Destino destino = rutas.buscar(solicitud);
+                if (destino.aparte(solicitud)) {
+                    atenderAparte(clave, conexion, destino, solicitud, mantener);
+                } else {
+                    encolar(clave, conexion, destino.atender(solicitud, mantener));
+                }
+            }
+        } catch (SolicitudHttp.Invalida e) {
+            conexion.entrada.clear();
+            responderError(clave, conexion, e);
+            return;
+        }
+        conexion.entrada.compact(); // Lo que sobra es el comienzo de la siguiente solicitud
+        escribir(clave);
+    }
+
+    /**
+     * Método para atender una ruta asíncrona en el pool; la respuesta vuelve por terminadas
+     */
+    private void atenderAparte(SelectionKey clave, Conexion conexion, RegistroRutas.Destino destino,
+                               SolicitudHttp solicitud, boolean mantener) {
+        conexion.esperando = true;
+        try {
+            ejecutor.execute(() -> {
+                RespuestaHttp respuesta = null;
+                try {
+                    respuesta = destino.atender(solicitud, mantener);
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Error: " + e);
+                }
+                terminadas.add(new Terminada(clave, respuesta));
+                clave.selector().wakeup();
+            });
+        } catch (RejectedExecutionException e) {
+            // Pool ocupado y su cola llena: igual que el modo por hilos, 503 y se cierra
+            conexion.esperando = false;
+            encolar(clave, conexion, EvaluacionServidor.crearRespuesta("503 Service Unavailable", "text/html",
+                    "<h1>Servidor ocupado, intente nuevamente</h1>", false));
+        }
+    }
+
+    /**
+     * Pasa a la salida la respuesta de una ruta asíncrona y sigue con las solicitudes que
+     * hayan llegado mientras tanto
+     */
+    private void continuar(Terminada terminada) throws IOException {
+        SelectionKey clave = terminada.clave;
+        if (!clave.isValid() || terminada.respuesta == null) {
+            if (terminada.respuesta != null) descartar(terminada.respuesta); // El cliente ya se fue
+            cerrar(clave);
+            return;
+        }
+        Conexion conexion = (Conexion) clave.attachment();
+        conexion.esperando = false;
+        conexion.ultimaActividad = System.currentTimeMillis();
+        encolar(clave, conexion, terminada.respuesta);
+        procesar(clave, conexion);
+    }
+
+    /**
+     * Método para pedir al pool el siguiente trozo de un Flujo. Si el pool no lo acepta, se
+     * llena en este hilo (la respuesta ya empezó a enviarse y no se puede cambiar por un 503).
+     */
+    private void llenarAparte(SelectionKey clave, Flujo f) throws IOException {
+        f.llenando = true;
+        try {
+            ejecutor.execute(() -> {
+                boolean quedan = false;
+                boolean fallo = false;
+                try {
+                    quedan = RespuestaHttp.siguienteTrozo(f.generador, f.trozo);
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Error al generar la respuesta: " + e);
+                    fallo = true;
+                }
+                terminadas.add(new Terminada(clave, f, quedan, fallo));
+                clave.selector().wakeup();
+            });
+        } catch (RejectedExecutionException e) {
+            f.llenando = false;
+            f.terminado = !RespuestaHttp.siguienteTrozo(f.generador, f.trozo);
+        }
+    }
+
+    /**
+     * Sigue enviando un Flujo cuyo trozo ya llenó el pool
+     */
+    private void trozoListo(Terminada terminada) throws IOException {
+        SelectionKey clave = terminada.clave;
+        Flujo f = terminada.flujo;
+        f.llenando = false;
+        if (f.descartado || !clave.isValid()) {
+            f.generador.cerrar();
+            return;
+        }
+        if (terminada.fallo) {
+            cerrar(clave);
+            return;
+        }
+        f.terminado = !terminada.quedan;
+        escribir(clave);
+    }
+
+    private static void descartar(RespuestaHttp respuesta) {
+        if (respuesta.generador != null) respuesta.generador.cerrar();
+        if (respuesta.suscripcion != null) respuesta.suscripcion.cerrar();
+    }
+
+    private void encolar(SelectionKey clave, Conexion conexion, RespuestaHttp respuesta) {
+        if (conexion.salida.isEmpty()) conexion.ultimoEnvio = System.currentTimeMillis();
+        for (ByteBuffer parte : respuesta.partes) conexion.salida.add(parte.duplicate());
+        if (respuesta.archivo != null) conexion.salida.add(new Transferencia(respuesta.archivo, respuesta.largoArchivo));
+        if (respuesta.generador != null) conexion.salida.add(new Flujo(respuesta.generador));
+        if (!respuesta.mantener) conexion.cerrarAlTerminar = true;
+        if (respuesta.suscripcion != null) {
+            conexion.suscripcion = respuesta.suscripcion;
+            respuesta.suscripcion.alRecibir(() -> {
+                conEventos.add(clave);
+                clave.selector().wakeup();
+            });
+        }
+    }
+
+    private void responderError(SelectionKey clave, Conexion conexion, SolicitudHttp.Invalida e) throws IOException {
+        encolar(clave, conexion, EvaluacionServidor.respuestaError(e));
+        escribir(clave);
+    }
+
+    /**
+     * Pasa a la salida los eventos en vivo pendientes, solo si lo anterior ya se envió: si el
+     * cliente no lee, los eventos se acumulan en la suscripción y el difusor lo desconecta.
+     * Devuelve true si agregó algo.
+     */
+    private boolean traerEventos(Conexion conexion) {
+        if (conexion.suscripcion == null || !conexion.salida.isEmpty()) return false;
+        conexion.ultimoEnvio = System.currentTimeMillis();
+        ByteBuffer evento;
+        while ((evento = conexion.suscripcion.siguienteSiHay()) != null) {
+            if (conexion.suscripcion.terminada(evento)) {
+                conexion.suscripcion = null; // Se cierra al terminar de enviar lo que quede
+                break;
+            }
+            conexion.salida.add(evento);
+        }
+        return !conexion.salida.isEmpty();
+    }
+
+    /**
+     * Método para enviar las respuestas pendientes con una escritura agrupada.
+     * Mientras quede algo por enviar dejamos de leer, así un cliente lento no acumula respuestas.
+     */
+    private void escribir(SelectionKey clave) throws IOException {
+        SocketChannel canal = (SocketChannel) clave.channel();
+        Conexion conexion = (Conexion) clave.attachment();
+
+        // Con resultados en vivo, cada vez que se vacía la salida se siguen enviando los eventos que llegaron
+        traerEventos(conexion);
+        long enviados = 0;
+        do {
+            while (!conexion.salida.isEmpty()) {
+                if (conexion.salida.peekFirst() instanceof Flujo) {
+                    // Exportación: se genera un trozo (en el pool) solo cuando el anterior ya salió completo
+                    Flujo f = (Flujo) conexion.salida.peekFirst();
+                    if (f.llenando) break;
+                    if (!f.trozo.hasRemaining()) {
+                        if (f.terminado) {
+                            f.generador.cerrar();
+                            conexion.salida.pollFirst();
+                            continue;
+                        }
+                        llenarAparte(clave, f);
+                        if (f.llenando) break;
+                    }
+                    enviados += canal.write(f.trozo);
+                    if (f.trozo.hasRemaining()) break; // Socket lleno
+                    continue;
+                }
+                if (conexion.salida.peekFirst() instanceof Transferencia) {
+                    // Archivo grande: el núcleo lo copia directamente del disco al socket
+                    Transferencia t = (Transferencia) conexion.salida.peekFirst();
+                    if (t.canal == null) t.canal = FileChannel.open(t.archivo);
+                    long n = t.canal.transferTo(t.enviados, t.largo - t.enviados, canal);
+                    t.enviados += n;
+                    enviados += n;
+                    if (t.enviados >= t.largo) {
+                        t.cerrar();
+                        conexion.salida.pollFirst();
+                        continue;
+                    }
+                    if (n == 0 && t.enviados >= t.canal.size()) {
+                        throw new IOException("El archivo " + t.archivo + " cambió mientras se enviaba");
+                    }
+                    if (n == 0) break;
+                    continue;
+                }
+
+                // Buffers consecutivos: una sola escritura agrupada
+                int cantidad = 0;
+                for (Object o : conexion.salida) {
+                    if (!(o instanceof ByteBuffer)) break;
+                    cantidad++;
+                }
+                ByteBuffer[] partes = new ByteBuffer[cantidad];
+                Iterator<Object> it = conexion.salida.iterator();
+                for (int i = 0; i < cantidad; i++) partes[i] = (ByteBuffer) it.next();
+                enviados += canal.write(partes);
+                while (!conexion.salida.isEmpty() && conexion.salida.peekFirst() instanceof ByteBuffer
+                        && !((ByteBuffer) conexion.salida.peekFirst()).hasRemaining()) {
+                    conexion.salida.pollFirst();
+                }
+                if (!conexion.salida.isEmpty() && conexion.salida.peekFirst() instanceof ByteBuffer) break; // Socket lleno
+            }
+        } while (traerEventos(conexion));
+        if (enviados > 0) conexion.ultimoEnvio = System.currentTimeMillis();
+
+        if (!conexion.salida.isEmpty() && conexion.salida.peekFirst() instanceof Flujo
+                && ((Flujo) conexion.salida.peekFirst()).llenando) {
+            clave.interestOps(0); // Se sigue escribiendo cuando el pool termine el trozo
+        } else if (!conexion.salida.isEmpty()) {
+            clave.interestOps(SelectionKey.OP_WRITE);
+        } else if (conexion.esperando) {
+            clave.interestOps(0); // No se lee hasta que llegue la respuesta asíncrona
+        } else if (conexion.cerrarAlTerminar && conexion.suscripcion == null) {
+            cerrar(clave);
+        } else {
+            clave.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Método para cerrar las conexiones que no envían nada a tiempo, y las que tienen salida
+     * pendiente pero el cliente dejó de leer (si no, retendrían sus buffers, el archivo abierto
+     * o el generador de una exportación para siempre)
+     */
+    private void cerrarInactivas(Selector selector, long ahora) {
+        for (SelectionKey clave : selector.keys()) {
+            if (!(clave.attachment() instanceof Conexion)) continue;
+            Conexion conexion = (Conexion) clave.attachment();
+            if (!conexion.salida.isEmpty()) {
+                if (ahora - conexion.ultimoEnvio > config.timeoutInactividadMs) cerrar(clave);
+                continue;
+            }
+            long limite = conexion.atendidas == 0 ? config.timeoutLecturaMs : config.timeoutInactividadMs;
+            if (conexion.suscripcion == null && !conexion.esperando && ahora - conexion.ultimaActividad > limite) {
+                cerrar(clave);
+            }
+        }
+    }
+
+    private void cerrar(SelectionKey clave) {
+        if (clave.attachment() instanceof Conexion) {
+            Conexion conexion = (Conexion) clave.attachment();
+            if (conexion.suscripcion != null) conexion.suscripcion.cerrar();
+            for (Object pendiente : conexion.salida) {
+                if (pendiente instanceof Transferencia) ((Transferencia) pendiente).cerrar();
+                if (pendiente instanceof Flujo) {
+                    Flujo f = (Flujo) pendiente;
+                    if (f.llenando) f.descartado = true; // Lo cierra trozoListo cuando el pool termine
+                    else f.generador.cerrar();
+                }
+            }
+        }
+        clave.cancel();
+        try { clave.channel().close(); } catch (IOException e) {}
+    }
+}
@@ -0,0 +1,292 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Solicitud HTTP/1.x ya leída: línea de solicitud, cabeceras y cuerpo (si trae Content-Length).
+ * El análisis trabaja sobre un ByteBuffer para poder usarse tanto con sockets bloqueantes
+ * como con lecturas incrementales: si los datos no están completos devuelve null sin consumir
+ * nada de la solicitud (solo descarta las líneas vacías que la preceden).
+ *
+ * La línea de solicitud se analiza byte a byte: el método y la versión habituales son
+ * constantes, y del destino (camino y consulta) solo se copian sus bytes. El camino y los
+ * parámetros de la consulta se recorren sobre esos bytes con posiciones; los parámetros
+ * enteros se leen sin crear Strings, y los de texto solo crean el del valor pedido.
+ */
+final class SolicitudHttp {
+    static final int MAX_CABECERAS = 16 * 1024; // Tamaño máximo de línea de solicitud + cabeceras
+    static final int MAX_CUERPO = 64 * 1024;    // Tamaño máximo del cuerpo aceptado
+
+    static final int NO_NUMERO = -1; // numeroRuta cuando el segmento {n} no es un número
+
+    String metodo;
+    String version;
+    byte[] objetivo;    // Destino de la línea de solicitud tal como llegó: camino y consulta
+    int finCamino;      // Posición del '?' en objetivo, o su largo si no hay consulta
+    byte[] camino;      // Camino con las secuencias %XX decodificadas (objetivo mismo si no tiene)
+    int largoCamino;
+    int numeroRuta = NO_NUMERO; // Número del segmento {n} de la ruta encontrada (ver TablaRutas)
+    final Map<String, String> cabeceras = new HashMap<>(); // Nombres en minúscula
+    byte[] cuerpo = new byte[0];
+
+    /**
+     * Error en la solicitud recibida; lleva el estado HTTP con el que hay que responder
+     */
+    static final class Invalida extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final String estado;
+
+        Invalida(String estado) {
+            super(estado);
+            this.estado = estado;
+        }
+    }
+
+    String cabecera(String nombre) {
+        return cabeceras.get(nombre);
+    }
+
+    /** Camino decodificado como texto (para buscarlo fuera de la tabla de rutas) */
+    String camino() {
+        return new String(camino, 0, largoCamino, StandardCharsets.UTF_8);
+    }
+
+    boolean tieneConsulta() {
+        return finCamino < objetivo.length;
+    }
+
+    /**
+     * Método para obtener un parámetro de la consulta (?clave=valor&...) ya decodificado, o null
+     * si no está o su codificación % no es válida
+     */
+    String parametro(String nombre) {
+        int valor = buscarParametro(nombre);
+        if (valor < 0) return null;
+        int fin = finValor(valor);
+        byte[] decodificado = new byte[fin - valor];
+        int largo = decodificar(objetivo, valor, fin, decodificado, true);
+        return largo < 0 ? null : new String(decodificado, 0, largo, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Método para leer un parámetro entero de la consulta directamente de los bytes.
+     * Devuelve siNoHay si falta, está vacío o no es un número entero.
+     */
+    int parametroEntero(String nombre, int siNoHay) {
+        int i = buscarParametro(nombre);
+        if (i < 0) return siNoHay;
+        int fin = finValor(i);
+        while (i < fin && objetivo[i] == '+') i++;          // Espacios codificados alrededor del número
+        while (fin > i && objetivo[fin - 1] == '+') fin--;
+        boolean negativo = i < fin && objetivo[i] == '-';
+        if (negativo) i++;
+        if (i == fin) return siNoHay;
+        long n = 0;
+        for (; i < fin; i++) {
+            int digito = objetivo[i] - '0';
+            if (digito < 0 || digito > 9) return siNoHay;
+            n = n * 10 + digito;
+            if (n > Integer.MAX_VALUE) return siNoHay;
+        }
+        return (int) (negativo ? -n : n);
+    }
+
+    /**
+     * Posición donde empieza el valor del primer parámetro con ese nombre (el nombre se compara
+     * tal como llegó, sin decodificar), o -1 si no está
+     */
+    private int buscarParametro(String nombre) {
+        int pos = finCamino + 1;
+        while (pos <= objetivo.length) {
+            int i = 0;
+            while (i < nombre.length() && pos + i < objetivo.length && objetivo[pos + i] == nombre.charAt(i)) i++;
+            int fin = pos + i;
+            if (i == nombre.length()) {
+                if (fin == objetivo.length || objetivo[fin] == '&') return fin; // Parámetro sin '=': valor vacío
+                if (objetivo[fin] == '=') return fin + 1;
+            }
+            while (fin < objetivo.length && objetivo[fin] != '&') fin++;
+            pos = fin + 1;
+        }
+        return -1;
+    }
+
+    private int finValor(int desde) {
+        while (desde < objetivo.length && objetivo[desde] != '&') desde++;
+        return desde;
+    }
+
+    /**
+     * Indica si el cliente quiere reutilizar la conexión (por defecto sí en HTTP/1.1, no en HTTP/1.0)
+     */
+    boolean mantenerConexion() {
+        String connection = cabecera("connection");
+        if ("HTTP/1.0".equals(version)) {
+            return connection != null && connection.equalsIgnoreCase("keep-alive");
+        }
+        return connection == null || !connection.toLowerCase(Locale.ROOT).contains("close");
+    }
+
+    /**
+     * Método para analizar una solicitud a partir de los bytes pendientes del buffer
+     * (entre position y limit). Si la solicitud está completa avanza position hasta el
+     * final de la misma y la devuelve. Si faltan datos devuelve null con position al comienzo
+     * de la solicitud: solo avanza sobre las líneas vacías que la preceden, que se descartan.
+     */
+    static SolicitudHttp analizar(ByteBuffer buf) throws Invalida {
+        // Se toleran líneas vacías antes de la línea de solicitud (RFC 7230, 3.5)
+        while (buf.hasRemaining() && (buf.get(buf.position()) == '\r' || buf.get(buf.position()) == '\n')) {
+            buf.position(buf.position() + 1);
+        }
+        int inicio = buf.position();
+        int fin = buf.limit();
+
+        // Buscamos la línea en blanco que termina las cabeceras
+        int finCabeceras = -1;
+        for (int i = inicio; i < fin; i++) {
+            if (buf.get(i) != '\n') continue;
+            if (i + 1 < fin && buf.get(i + 1) == '\n') { finCabeceras = i + 2; break; }
+            if (i + 2 < fin && buf.get(i + 1) == '\r' && buf.get(i + 2) == '\n') { finCabeceras = i + 3; break; }
+        }
+        if (finCabeceras < 0) {
+            if (fin - inicio > MAX_CABECERAS) throw new Invalida("431 Request Header Fields Too Large");
+            return null;
+        }
+        if (finCabeceras - inicio > MAX_CABECERAS) throw new Invalida("431 Request Header Fields Too Large");
+
+        SolicitudHttp solicitud = new SolicitudHttp();
+        int pos = lineaSolicitud(buf, inicio, solicitud);
+        while (pos < finCabeceras) {
+            int finLinea = pos;
+            while (buf.get(finLinea) != '\n') finLinea++;
+            int largo = finLinea - pos;
+            if (largo > 0 && buf.get(finLinea - 1) == '\r') largo--;
+            String linea = texto(buf, pos, largo);
+            pos = finLinea + 1;
+            if (linea.isEmpty()) break;
+
+            int dosPuntos = linea.indexOf(':');
+            if (dosPuntos <= 0) throw new Invalida("400 Bad Request");
+            String nombre = linea.substring(0, dosPuntos).trim().toLowerCase(Locale.ROOT);
+            if (solicitud.cabeceras.put(nombre, linea.substring(dosPuntos + 1).trim()) != null
+                    && nombre.equals("content-length")) {
+                // Otro servidor en el camino podría quedarse con el otro largo (request smuggling)
+                throw new Invalida("400 Bad Request");
+            }
+        }
+
+        // Solo aceptamos cuerpos con Content-Length (los navegadores no envían chunked en formularios)
+        if (solicitud.cabecera("transfer-encoding") != null) throw new Invalida("501 Not Implemented");
+        int largoCuerpo = 0;
+        String contentLength = solicitud.cabecera("content-length");
+        if (contentLength != null) {
+            // Solo dígitos (sin signo ni listas "5, 5")
+            if (contentLength.isEmpty()) throw new Invalida("400 Bad Request");
+            long largo = 0;
+            for (int i = 0; i < contentLength.length(); i++) {
+                int digito = contentLength.charAt(i) - '0';
+                if (digito < 0 || digito > 9) throw new Invalida("400 Bad Request");
+                largo = Math.min(largo * 10 + digito, MAX_CUERPO + 1L);
+            }
+            if (largo > MAX_CUERPO) throw new Invalida("413 Payload Too Large");
+            largoCuerpo = (int) largo;
+        }
+        if (fin - finCabeceras < largoCuerpo) {
+            // Tenemos las cabeceras pero falta parte del cuerpo: volvemos al inicio y esperamos más datos
+            buf.position(inicio);
+            return null;
+        }
+        if (largoCuerpo > 0) {
+            solicitud.cuerpo = new byte[largoCuerpo];
+            buf.get(finCabeceras, solicitud.cuerpo, 0, largoCuerpo);
+        }
+        buf.position(finCabeceras + largoCuerpo);
+        return solicitud;
+    }
+
+    /**
+     * Método para leer la línea de solicitud (METODO DESTINO VERSION) que empieza en pos;
+     * devuelve la posición de la línea siguiente
+     */
+    private static int lineaSolicitud(ByteBuffer buf, int pos, SolicitudHttp solicitud) throws Invalida {
+        int finLinea = pos;
+        while (buf.get(finLinea) != '\n') finLinea++;
+        int fin = finLinea > pos && buf.get(finLinea - 1) == '\r' ? finLinea - 1 : finLinea;
+        int espacio = indice(buf, pos, fin, (byte) ' ');
+        int espacio2 = espacio < 0 ? -1 : indice(buf, espacio + 1, fin, (byte) ' ');
+        if (espacio <= pos || espacio2 <= espacio + 1 || indice(buf, espacio2 + 1, fin, (byte) ' ') >= 0) {
+            throw new Invalida("400 Bad Request");
+        }
+
+        solicitud.metodo = iguales(buf, pos, espacio, "GET") ? "GET"
+                : iguales(buf, pos, espacio, "POST") ? "POST"
+                : texto(buf, pos, espacio - pos);
+        solicitud.version = iguales(buf, espacio2 + 1, fin, "HTTP/1.1") ? "HTTP/1.1"
+                : iguales(buf, espacio2 + 1, fin, "HTTP/1.0") ? "HTTP/1.0"
+                : texto(buf, espacio2 + 1, fin - espacio2 - 1);
+        if (!solicitud.version.startsWith("HTTP/1.")) throw new Invalida("400 Bad Request");
+
+        byte[] objetivo = new byte[espacio2 - espacio - 1];
+        buf.get(espacio + 1, objetivo, 0, objetivo.length);
+        int finCamino = 0;
+        boolean codificado = false;
+        while (finCamino < objetivo.length && objetivo[finCamino] != '?') {
+            if (objetivo[finCamino] == '%') codificado = true;
+            finCamino++;
+        }
+        solicitud.objetivo = objetivo;
+        solicitud.finCamino = finCamino;
+        solicitud.camino = objetivo;
+        solicitud.largoCamino = finCamino;
+        if (codificado) {
+            // Solo se copia el camino si trae secuencias %XX; si no son válidas se usa tal como llegó
+            byte[] camino = new byte[finCamino];
+            int largo = decodificar(objetivo, 0, finCamino, camino, false);
+            if (largo >= 0) {
+                solicitud.camino = camino;
+                solicitud.largoCamino = largo;
+            }
+        }
+        return finLinea + 1;
+    }
+
+    /**
+     * Método para decodificar %XX (y '+' como espacio si mas) de origen[desde, hasta) en destino.
+     * Devuelve el largo decodificado, o -1 si hay una secuencia % incompleta o no válida.
+     */
+    static int decodificar(byte[] origen, int desde, int hasta, byte[] destino, boolean mas) {
+        int n = 0;
+        for (int i = desde; i < hasta; i++) {
+            byte b = origen[i];
+            if (b == '%') {
+                int alto = i + 2 < hasta ? Character.digit(origen[i + 1], 16) : -1;
+                int bajo = alto < 0 ? -1 : Character.digit(origen[i + 2], 16);
+                if (bajo < 0) return -1;
+                destino[n++] = (byte) (alto << 4 | bajo);
+                i += 2;
+            } else {
+                destino[n++] = mas && b == '+' ? (byte) ' ' : b;
+            }
+        }
+        return n;
+    }
+
+    private static int indice(ByteBuffer buf, int desde, int hasta, byte b) {
+        for (int i = desde; i < hasta; i++) if (buf.get(i) == b) return i;
+        return -1;
+    }
+
+    private static boolean iguales(ByteBuffer buf, int desde, int hasta, String ascii) {
+        if (hasta - desde != ascii.length()) return false;
+        for (int i = 0; i < ascii.length(); i++) if (buf.get(desde + i) != ascii.charAt(i)) return false;
+        return true;
+    }
+
+    private static String texto(ByteBuffer buf, int desde, int largo) {
+        byte[] bytes = new byte[largo];
+        buf.get(desde, bytes, 0, largo);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,152 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Tabla de rutas precompilada: un árbol de prefijos (trie) sobre los bytes del camino de la
+ * solicitud. Encontrar la ruta cuesta un paso por byte del camino, sin crear Strings y sin
+ * importar cuántas rutas haya registradas.
+ *
+ * Las rutas se registran con patrones:
+ *   "/api/resultados"                 exacta
+ *   "/img/*"                          prefijo: cualquier camino que empiece con "/img/"
+ *   "/api/profesores/{n}/resultados"  con un segmento numérico, que queda en SolicitudHttp.numeroRuta
+ * Un camino exacto gana sobre un prefijo, y un prefijo más largo sobre uno más corto. Los
+ * segmentos literales tienen prioridad sobre {n} y no se vuelve atrás: un segmento que empieza
+ * como un literal registrado ya no se prueba como {n}.
+ */
+final class TablaRutas<T> {
+    private final Nodo<T> raiz = new Nodo<>();
+
+    private static final class Nodo<T> {
+        int primero;        // Byte del primer hijo de hijos
+        Nodo<T>[] hijos;    // Hijos indexados por byte - primero (null: sin hijos)
+        Nodo<T> numero;     // Hijo para un segmento {n}
+        T exacta;           // Valor de la ruta que termina en este nodo
+        T prefijo;          // Valor para los caminos que siguen desde este nodo
+
+        Nodo<T> hijo(int b) {
+            int i = b - primero;
+            return hijos != null && i >= 0 && i < hijos.length ? hijos[i] : null;
+        }
+
+        Nodo<T> crearHijo(int b) {
+            Nodo<T> hijo = hijo(b);
+            if (hijo != null) return hijo;
+            if (hijos == null) {
+                hijos = nuevos(1);
+                primero = b;
+            } else if (b < primero) {
+                Nodo<T>[] mayor = nuevos(hijos.length + primero - b);
+                System.arraycopy(hijos, 0, mayor, primero - b, hijos.length);
+                hijos = mayor;
+                primero = b;
+            } else if (b - primero >= hijos.length) {
+                hijos = Arrays.copyOf(hijos, b - primero + 1);
+            }
+            return hijos[b - primero] = new Nodo<>();
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Nodo<T>[] nuevos(int cantidad) {
+            return (Nodo<T>[]) new Nodo<?>[cantidad];
+        }
+    }
+
+    /**
+     * Método para registrar una ruta con su patrón (ver la descripción de la clase)
+     */
+    void agregar(String patron, T valor) {
+        fijar(nodo(patron, false, true), patron.endsWith("*"), valor, patron);
+    }
+
+    /**
+     * Método para registrar un camino exacto tal cual, sin interpretar * ni {n} (por ejemplo,
+     * el nombre de un archivo)
+     */
+    void agregarExacta(String camino, T valor) {
+        fijar(nodo(camino, true, true), false, valor, camino);
+    }
+
+    /**
+     * Método para obtener el valor registrado con ese patrón (o camino exacto, si exacta), o null
+     */
+    T registrada(String patron, boolean exacta) {
+        Nodo<T> nodo = nodo(patron, exacta, false);
+        if (nodo == null) return null;
+        return !exacta && patron.endsWith("*") ? nodo.prefijo : nodo.exacta;
+    }
+
+    /**
+     * Método para buscar la ruta del camino de la solicitud; devuelve su valor o null si
+     * ninguna coincide. Si la ruta tiene un segmento {n}, deja su número en solicitud.numeroRuta
+     * (NO_NUMERO si el segmento no es un número).
+     */
+    T buscar(SolicitudHttp solicitud) {
+        byte[] camino = solicitud.camino;
+        int largo = solicitud.largoCamino;
+        Nodo<T> nodo = raiz;
+        T prefijo = raiz.prefijo;
+        int i = 0;
+        while (i < largo) {
+            Nodo<T> siguiente = nodo.hijo(camino[i] & 0xff);
+            if (siguiente != null) {
+                i++;
+            } else if (nodo.numero != null) {
+                // Segmento {n}: hasta la próxima '/', con su valor si son solo dígitos
+                long numero = 0;
+                int inicio = i;
+                for (; i < largo && camino[i] != '/'; i++) {
+                    int digito = camino[i] - '0';
+                    if (numero < 0 || digito < 0 || digito > 9) numero = -1;
+                    else if ((numero = numero * 10 + digito) > Integer.MAX_VALUE) numero = -1;
+                }
+                solicitud.numeroRuta = numero < 0 || i == inicio ? SolicitudHttp.NO_NUMERO : (int) numero;
+                siguiente = nodo.numero;
+            } else {
+                return prefijo;
+            }
+            nodo = siguiente;
+            if (nodo.prefijo != null) prefijo = nodo.prefijo;
+        }
+        return nodo.exacta != null ? nodo.exacta : prefijo;
+    }
+
+    /**
+     * Nodo donde termina el patrón; con crear false devuelve null si no existe
+     */
+    private Nodo<T> nodo(String patron, boolean exacta, boolean crear) {
+        String camino = !exacta && patron.endsWith("*") ? patron.substring(0, patron.length() - 1) : patron;
+        Nodo<T> nodo = raiz;
+        int desde = 0;
+        for (int n = exacta ? -1 : camino.indexOf("{n}"); n >= 0; n = camino.indexOf("{n}", desde)) {
+            if (n == 0 || camino.charAt(n - 1) != '/' || (n + 3 < camino.length() && camino.charAt(n + 3) != '/')) {
+                throw new IllegalArgumentException("{n} debe ocupar un segmento completo: " + patron);
+            }
+            nodo = literal(nodo, camino.substring(desde, n), crear);
+            if (nodo == null) return null;
+            if (nodo.numero == null) {
+                if (!crear) return null;
+                nodo.numero = new Nodo<>();
+            }
+            nodo = nodo.numero;
+            desde = n + 3;
+        }
+        return literal(nodo, camino.substring(desde), crear);
+    }
+
+    private Nodo<T> literal(Nodo<T> nodo, String texto, boolean crear) {
+        for (byte b : texto.getBytes(StandardCharsets.UTF_8)) {
+            nodo = crear ? nodo.crearHijo(b & 0xff) : nodo.hijo(b & 0xff);
+            if (nodo == null) return null;
+        }
+        return nodo;
+    }
+
+    private static <T> void fijar(Nodo<T> nodo, boolean esPrefijo, T valor, String patron) {
+        if ((esPrefijo ? nodo.prefijo : nodo.exacta) != null) {
+            throw new IllegalArgumentException("Ruta registrada dos veces: " + patron);
+        }
+        if (esPrefijo) nodo.prefijo = valor;
+        else nodo.exacta = valor;
+    }
+}
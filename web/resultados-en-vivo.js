@@ -0,0 +1,67 @@
+// Resultados en vivo: aplica a la página los eventos de /api/profesores/{id}/eventos
+// "estado" trae los histogramas completos y cada "delta" lo que sumaron las evaluaciones nuevas
+// La página solo lo incluye cuando el servidor ofrece resultados en vivo (modo NIO)
+(function () {
+    var profesor = document.currentScript.getAttribute('data-profesor');
+    var escala = 0;
+    var histogramas = {};
+
+    var fuente = new EventSource('/api/profesores/' + profesor + '/eventos');
+    fuente.addEventListener('estado', function (e) {
+        var datos = JSON.parse(e.data);
+        escala = datos.escala;
+        histogramas = {};
+        datos.preguntas.forEach(function (p) {
+            histogramas[p.pregunta] = p.histograma.slice();
+            mostrar(p.pregunta);
+        });
+    });
+    fuente.addEventListener('delta', function (e) {
+        JSON.parse(e.data).preguntas.forEach(function (p) {
+            var histograma = histogramas[p.pregunta];
+            if (!histograma) return;
+            for (var v = 0; v < escala; v++) histograma[v] += p.delta[v];
+            mostrar(p.pregunta);
+        });
+    });
+
+    // Recalcula las estadísticas de una pregunta y actualiza su barra y su fila de la tabla
+    function mostrar(pregunta) {
+        var histograma = histogramas[pregunta];
+        var n = 0, suma = 0, cuadrados = 0;
+        for (var v = 1; v <= escala; v++) {
+            n += histograma[v - 1];
+            suma += histograma[v - 1] * v;
+            cuadrados += histograma[v - 1] * v * v;
+        }
+        if (n === 0) return;
+        var promedio = suma / n;
+        var desviacion = Math.sqrt(Math.max(0, n * cuadrados - suma * suma)) / n;
+        var mediana = (posicion(histograma, Math.floor((n + 1) / 2)) + posicion(histograma, Math.floor(n / 2) + 1)) / 2;
+
+        var barra = document.querySelector('td[data-pregunta="' + pregunta + '"]');
+        if (barra) {
+            barra.style.setProperty('--size', 'calc(' + promedio.toFixed(1) + ' / ' + escala + ')');
+            barra.querySelector('.data-label').textContent = promedio.toFixed(1);
+        }
+        var fila = document.querySelector('tr[data-pregunta="' + pregunta + '"]');
+        if (fila) {
+            var celdas = fila.querySelectorAll('td');
+            celdas[0].textContent = n;
+            celdas[1].textContent = promedio.toFixed(2);
+            celdas[2].textContent = mediana.toFixed(1);
+            celdas[3].textContent = desviacion.toFixed(2);
+            for (var p = 1; p <= escala; p++) celdas[3 + p].textContent = histograma[p - 1];
+        }
+    }
+
+    // Puntuación en la posición k (desde 1) de las respuestas ordenadas
+    function posicion(histograma, k) {
+        var acumulado = 0;
+        for (var v = 1; v < escala; v++) {
+            acumulado += histograma[v - 1];
+            if (acumulado >= k) return v;
+        }
+        return escala;
+    }
+})();